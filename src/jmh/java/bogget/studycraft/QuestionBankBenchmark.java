@@ -0,0 +1,98 @@
+package bogget.studycraft;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds one quiz card from the compiled bank, against the list-based sampler
+ * it replaced. Run with {@code -PjmhArgs="QuestionBankBenchmark -prof gc"} to
+ * see the allocation per card as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QuestionBankBenchmark {
+    @Param({"100", "10000"})
+    public int questions;
+
+    private QuestionBank bank;
+    private List<LegacyQuestion> legacyQuestions;
+    private final Random legacyRandom = new Random();
+
+    // A question as the old bank kept it, one object per row
+    private static class LegacyQuestion {
+        private final String question;
+        private final String correctAnswer;
+
+        LegacyQuestion(String question, String correctAnswer) {
+            this.question = question;
+            this.correctAnswer = correctAnswer;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder();
+        legacyQuestions = new ArrayList<>();
+        for (int i = 0; i < questions; i++) {
+            String question = "Question " + i;
+            String answer = "Answer " + i;
+            text.append(question).append('\t').append(answer).append('\n');
+            legacyQuestions.add(new LegacyQuestion(question, answer));
+        }
+        bank = QuestionBank.ofDeck(QuestionBankParser.parse(text));
+    }
+
+    @Benchmark
+    public QuestionBank.QuizData compiled() {
+        return bank.getQuestion(ThreadLocalRandom.current().nextInt(questions));
+    }
+
+    // The sampler before decks were compiled: boxed indices searched with
+    // List.contains, an indexOf scan for the question, and a shuffled list
+    @Benchmark
+    public QuestionBank.QuizData legacy() {
+        LegacyQuestion question = legacyQuestions.get(legacyRandom.nextInt(legacyQuestions.size()));
+
+        List<String> wrongAnswers = new ArrayList<>();
+        List<Integer> usedIndices = new ArrayList<>();
+        usedIndices.add(legacyQuestions.indexOf(question));
+        for (int i = 0; i < 3 && i < legacyQuestions.size() - 1; i++) {
+            int index;
+            do {
+                index = legacyRandom.nextInt(legacyQuestions.size());
+            } while (usedIndices.contains(index));
+            usedIndices.add(index);
+            wrongAnswers.add(legacyQuestions.get(index).correctAnswer);
+        }
+        while (wrongAnswers.size() < 3) {
+            wrongAnswers.add("Option " + (wrongAnswers.size() + 1));
+        }
+
+        List<String> allAnswers = new ArrayList<>();
+        allAnswers.add(question.correctAnswer);
+        allAnswers.addAll(wrongAnswers);
+        Collections.shuffle(allAnswers, legacyRandom);
+        int correctIndex = allAnswers.indexOf(question.correctAnswer);
+        return new QuestionBank.QuizData(question.question, question.correctAnswer, allAnswers, correctIndex);
+    }
+}
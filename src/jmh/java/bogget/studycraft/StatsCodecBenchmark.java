@@ -0,0 +1,61 @@
+package bogget.studycraft;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes a full stats delta as the client gets it when the stats view opens.
+ * Compare the two answer counts to check that decoding does not grow with the
+ * number of answers an entry counts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatsCodecBenchmark {
+    @Param({"100", "10000"})
+    public int entries;
+
+    @Param({"1", "100000"})
+    public int answersPerEntry;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        int[] questionIds = new int[entries];
+        String[] texts = new String[entries];
+        long[] counts = new long[entries];
+        long[][] attempts = new long[entries][];
+        for (int i = 0; i < entries; i++) {
+            questionIds[i] = i;
+            texts[i] = "Question " + i;
+            int correct = answersPerEntry * 3 / 5;
+            counts[i] = PlayerStatsShard.pack(correct, answersPerEntry - correct);
+            // A full history either way, so only the counts differ
+            attempts[i] = new long[AnswerHistory.SLOTS];
+            Arrays.fill(attempts[i], AnswerHistory.pack(1_700_000_000_000L + i, 1500, true));
+        }
+        encoded = StatsCodec.encodeDelta(new StatsDelta(1L, 1L, true, questionIds, texts, counts, attempts));
+    }
+
+    @Benchmark
+    public StatsDelta decodeDelta() throws IOException {
+        return StatsCodec.decodeDelta(encoded);
+    }
+}
@@ -0,0 +1,82 @@
+package bogget.studycraft;
+
+import java.util.Random;
+
+/**
+ * Picks a player's next question from the question bank, weighted towards the
+ * questions they get wrong and the ones they have not seen for a while. The
+ * weights live in a {@link FenwickTree} over the bank, so re-weighting a question
+ * after an answer and drawing the next one are both O(log n).
+ *
+ * Staleness grows with time rather than with answers, so weights drift between
+ * updates. Every pick re-weights a few questions in turn, which keeps the whole
+ * tree reasonably fresh without ever touching all of it at once.
+ *
+ * Not thread-safe; {@link PlayerStatsShard} guards it with its own lock.
+ */
+public class AdaptiveSelector {
+    // Every question keeps some chance, so nothing disappears for good
+    private static final long BASE_WEIGHT = 100;
+    private static final long ERROR_WEIGHT = 900;
+    private static final long STALE_WEIGHT = 500;
+    private static final long STALE_AFTER_MS = 24 * 60 * 60 * 1000L;
+    private static final int REFRESH_PER_PICK = 8;
+
+    private final QuestionBank bank;
+    // Shared with every other player's selector for the same bank
+    private final QuestionBank.QuestionIds questionIds;
+    private final FenwickTree weights;
+    private int refreshCursor = 0;
+
+    public AdaptiveSelector(QuestionBank bank, QuestionIndex index, long[] counts, AnswerHistory history, long now) {
+        this.bank = bank;
+        this.questionIds = bank.getQuestionIds(index);
+        long[] initialWeights = new long[questionIds.size()];
+        for (int i = 0; i < initialWeights.length; i++) {
+            initialWeights[i] = weightOf(questionIds.idAt(i), counts, history, now);
+        }
+        this.weights = new FenwickTree(initialWeights);
+    }
+
+    public boolean isFor(QuestionBank bank) {
+        return this.bank == bank;
+    }
+
+    /**
+     * Draws a bank index, or returns -1 if the bank is empty.
+     */
+    public int pick(Random random, long[] counts, AnswerHistory history, long now) {
+        if (questionIds.size() == 0) {
+            return -1;
+        }
+        for (int i = 0; i < REFRESH_PER_PICK && i < questionIds.size(); i++) {
+            refreshCursor = (refreshCursor + 1) % questionIds.size();
+            weights.set(refreshCursor, weightOf(questionIds.idAt(refreshCursor), counts, history, now));
+        }
+        return weights.find(random.nextLong(weights.total()));
+    }
+
+    /**
+     * Re-weights a question after the player answers it.
+     */
+    public void update(int questionId, long[] counts, AnswerHistory history, long now) {
+        int bankIndex = questionIds.bankIndexOf(questionId);
+        if (bankIndex >= 0) {
+            weights.set(bankIndex, weightOf(questionId, counts, history, now));
+        }
+    }
+
+    static long weightOf(int questionId, long[] counts, AnswerHistory history, long now) {
+        long packed = questionId < counts.length ? counts[questionId] : 0;
+        int correct = PlayerStatsShard.correctOf(packed);
+        int wrong = PlayerStatsShard.wrongOf(packed);
+        // Smoothed so an unseen question counts as half wrong
+        double errorRate = (wrong + 1.0) / (correct + wrong + 2.0);
+
+        // Questions with no recorded attempt time count as fully stale
+        long lastAttempt = history.getLastAttemptMillis(questionId);
+        double staleness = lastAttempt == 0 ? 1 : Math.min(1, Math.max(0, now - lastAttempt) / (double) STALE_AFTER_MS);
+
+        return BASE_WEIGHT + Math.round(ERROR_WEIGHT * errorRate) + Math.round(STALE_WEIGHT * staleness);
+    }
+}
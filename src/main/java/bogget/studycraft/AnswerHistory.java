@@ -0,0 +1,169 @@
+package bogget.studycraft;
+
+import java.util.Arrays;
+
+/**
+ * The last {@link #SLOTS} attempts at each question for one player, kept as one
+ * ring buffer of packed {@code long}s per question id:
+ *
+ * <pre>
+ * bits 63..32  answer time, epoch seconds
+ * bits 31..1   response latency in milliseconds
+ * bit  0       1 if the answer was correct
+ * </pre>
+ *
+ * Rings are allocated the first time a question is answered and never grow, so
+ * memory is bounded by the number of questions, not by how long a player has
+ * played. Not thread-safe; {@link PlayerStatsShard} guards it with its own lock.
+ *
+ * {@link #freeze()} hands out a read-only view in constant time by sharing the
+ * arrays. The live history copies an array the first time it writes to it after
+ * a freeze: the outer arrays once, and each ring only when its question is next
+ * answered.
+ */
+public class AnswerHistory {
+    public static final int SLOTS = 16;
+    private static final int MAX_LATENCY_MS = Integer.MAX_VALUE >>> 1;
+    private static final long[] NO_ATTEMPTS = new long[0];
+
+    // Indexed by question id; a ring is null until its question is answered
+    private long[][] rings = new long[0][];
+    // Attempts ever written to each ring; the next slot is written % SLOTS
+    private int[] written = new int[0];
+
+    // Live histories only: the freeze epoch each ring was last copied in, so rings
+    // from an earlier epoch may be shared with a frozen view
+    private int[] ringEpochs = new int[0];
+    private int epoch = 0;
+    // True while rings and written are shared with a frozen view
+    private boolean shared = false;
+    private final boolean frozen;
+
+    public AnswerHistory() {
+        this.frozen = false;
+    }
+
+    private AnswerHistory(long[][] rings, int[] written) {
+        this.rings = rings;
+        this.written = written;
+        this.frozen = true;
+    }
+
+    public static long pack(long timeMillis, int latencyMs, boolean correct) {
+        long latency = Math.max(0, Math.min(latencyMs, MAX_LATENCY_MS));
+        return ((timeMillis / 1000) << 32) | (latency << 1) | (correct ? 1 : 0);
+    }
+
+    public static long timeMillisOf(long attempt) {
+        return (attempt >>> 32) * 1000;
+    }
+
+    public static int latencyMsOf(long attempt) {
+        return (int) ((attempt & 0xFFFFFFFFL) >>> 1);
+    }
+
+    public static boolean isCorrect(long attempt) {
+        return (attempt & 1) != 0;
+    }
+
+    public void record(int questionId, long attempt) {
+        if (frozen) {
+            throw new IllegalStateException("Frozen answer history is read-only");
+        }
+        if (questionId >= rings.length) {
+            int capacity = Math.max(questionId + 1, rings.length * 2);
+            rings = Arrays.copyOf(rings, capacity);
+            written = Arrays.copyOf(written, capacity);
+            ringEpochs = Arrays.copyOf(ringEpochs, capacity);
+            shared = false;
+        } else {
+            unshare();
+        }
+        if (rings[questionId] == null) {
+            rings[questionId] = new long[SLOTS];
+            ringEpochs[questionId] = epoch;
+        } else if (ringEpochs[questionId] != epoch) {
+            rings[questionId] = rings[questionId].clone();
+            ringEpochs[questionId] = epoch;
+        }
+        int count = written[questionId];
+        rings[questionId][count % SLOTS] = attempt;
+        // Past one lap only the position matters, so the count stays below 2 * SLOTS
+        written[questionId] = count + 1 < 2 * SLOTS ? count + 1 : count + 1 - SLOTS;
+    }
+
+    /**
+     * Returns the recorded attempts at a question, oldest first.
+     */
+    public long[] getAttempts(int questionId) {
+        if (questionId < 0 || questionId >= rings.length || rings[questionId] == null) {
+            return NO_ATTEMPTS;
+        }
+        long[] ring = rings[questionId];
+        int count = written[questionId];
+        if (count <= SLOTS) {
+            return Arrays.copyOf(ring, count);
+        }
+
+        long[] attempts = new long[SLOTS];
+        int head = count % SLOTS;
+        System.arraycopy(ring, head, attempts, 0, SLOTS - head);
+        System.arraycopy(ring, 0, attempts, SLOTS - head, head);
+        return attempts;
+    }
+
+    /**
+     * Returns when the question was last answered, or 0 if there is no record.
+     */
+    public long getLastAttemptMillis(int questionId) {
+        if (questionId < 0 || questionId >= rings.length || rings[questionId] == null) {
+            return 0;
+        }
+        return timeMillisOf(rings[questionId][(written[questionId] - 1) % SLOTS]);
+    }
+
+    /**
+     * Returns a read-only view of the history as it is now. Constant time; later
+     * writes to this history copy whatever they touch and leave the view alone.
+     */
+    public AnswerHistory freeze() {
+        if (frozen) {
+            return this;
+        }
+        shared = true;
+        epoch++;
+        return new AnswerHistory(rings, written);
+    }
+
+    private void unshare() {
+        if (shared) {
+            rings = rings.clone();
+            written = written.clone();
+            shared = false;
+        }
+    }
+
+    /**
+     * Puts {@code older} in front of this history, keeping the newest attempts
+     * when a question has more than fit.
+     */
+    public void mergeOlder(AnswerHistory older) {
+        for (int id = 0; id < older.rings.length; id++) {
+            if (older.rings[id] == null) {
+                continue;
+            }
+            long[] newer = getAttempts(id);
+            unshare();
+            if (id < rings.length) {
+                rings[id] = null;
+                written[id] = 0;
+            }
+            for (long attempt : older.getAttempts(id)) {
+                record(id, attempt);
+            }
+            for (long attempt : newer) {
+                record(id, attempt);
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package bogget.studycraft;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Grades typed answers against a {@link QuestionBank}. Answers and guesses are
+ * normalized (case, accents, punctuation and spacing are ignored), and a guess
+ * counts if it is within a small edit distance of one of the correct answer's
+ * accepted forms: the answer itself or any of its alternatives separated by
+ * ';' or '|'. Longer answers allow more typos.
+ *
+ * Every accepted form in the deck goes into one BK-tree, a metric tree over
+ * Levenshtein distance, so a guess is only compared with the few forms the
+ * triangle inequality cannot rule out. The same lookup gives the "did you mean"
+ * suggestion when a guess is wrong, and catches guesses that are closer to a
+ * different answer in the deck than to the right one.
+ *
+ * Immutable once built, and built once per bank by {@link QuestionBank#getAnswerMatcher()}.
+ */
+public class AnswerMatcher {
+    // Typos tolerated grow with the length of the accepted form, up to this many
+    private static final int MAX_TYPOS = 3;
+    // How far a guess may be from a deck answer to still be suggested
+    private static final int SUGGEST_DISTANCE = 4;
+    // Scratch rows for the distance calculation, reused across calls on one thread
+    private static final ThreadLocal<int[][]> ROWS = ThreadLocal.withInitial(() -> new int[2][64]);
+
+    /**
+     * The outcome of grading one guess.
+     */
+    public static class Grade {
+        private final boolean correct;
+        private final String suggestion;
+
+        Grade(boolean correct, String suggestion) {
+            this.correct = correct;
+            this.suggestion = suggestion;
+        }
+
+        public boolean isCorrect() {
+            return correct;
+        }
+
+        /**
+         * The deck answer a wrong guess looks most like, or null if none is close.
+         */
+        public String getSuggestion() {
+            return suggestion;
+        }
+    }
+
+    private final QuestionBank bank;
+
+    // BK-tree nodes: each accepted form, the answer id it belongs to, and its
+    // children as a linked list keyed by their distance from it
+    private String[] terms;
+    private int[] termAnswers;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] edgeDistance;
+    private int nodeCount = 0;
+
+    public AnswerMatcher(QuestionBank bank) {
+        this.bank = bank;
+        int capacity = Math.max(16, bank.getAnswerCount() * 2);
+        terms = new String[capacity];
+        termAnswers = new int[capacity];
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+        edgeDistance = new int[capacity];
+        for (int answer = 0; answer < bank.getAnswerCount(); answer++) {
+            String text = bank.getAnswerById(answer);
+            insert(normalize(text), answer);
+            for (String alternative : text.split("[;|]")) {
+                insert(normalize(alternative), answer);
+            }
+        }
+    }
+
+    /**
+     * Grades a guess at the question with the given bank index.
+     */
+    public Grade grade(int questionIndex, String guess) {
+        String normalized = normalize(guess);
+        int answer = bank.getAnswerId(questionIndex);
+        if (normalized.isEmpty() || nodeCount == 0) {
+            return new Grade(false, null);
+        }
+
+        // Closest form of the right answer, and closest form of any other answer
+        int[] best = {Integer.MAX_VALUE, -1, Integer.MAX_VALUE, -1};
+        search(0, normalized, answer, searchRadius(normalized.length()), best);
+        int ownDistance = best[0];
+        int otherDistance = best[2];
+
+        // An exact form of the right answer always counts, even if another answer shares
+        // it; otherwise a tie with another answer goes to the right one
+        if (best[1] >= 0 && (ownDistance == 0
+                || ownDistance <= allowedTypos(terms[best[1]].length()) && ownDistance <= otherDistance)) {
+            return new Grade(true, null);
+        }
+        // Suggest whichever deck answer the guess is nearest
+        int nearest = ownDistance <= otherDistance ? best[1] : best[3];
+        boolean close = nearest >= 0 && Math.min(ownDistance, otherDistance) <= searchRadius(normalized.length());
+        return new Grade(false, close ? bank.getAnswerById(termAnswers[nearest]) : null);
+    }
+
+    /**
+     * Lower-cases, strips accents, and turns every run of punctuation or spaces
+     * into a single space.
+     */
+    public static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder normalized = new StringBuilder(decomposed.length());
+        boolean space = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (space && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                normalized.append(c);
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    static int allowedTypos(int length) {
+        return Math.min(MAX_TYPOS, length / 5);
+    }
+
+    // Short guesses search a small radius, which prunes most of the tree. It is
+    // never less than the typos allowed for any form the guess could match.
+    static int searchRadius(int guessLength) {
+        return Math.max(1, Math.min(SUGGEST_DISTANCE, guessLength / 3));
+    }
+
+    private void insert(String term, int answer) {
+        if (term.isEmpty()) {
+            return;
+        }
+        if (nodeCount == terms.length) {
+            int capacity = terms.length * 2;
+            terms = Arrays.copyOf(terms, capacity);
+            termAnswers = Arrays.copyOf(termAnswers, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            edgeDistance = Arrays.copyOf(edgeDistance, capacity);
+        }
+        int node = nodeCount;
+        terms[node] = term;
+        termAnswers[node] = answer;
+        firstChild[node] = -1;
+        nextSibling[node] = -1;
+        if (nodeCount++ == 0) {
+            return;
+        }
+
+        int parent = 0;
+        while (true) {
+            int distance = distance(term, terms[parent]);
+            if (distance == 0 && termAnswers[parent] == answer) {
+                // Already accepted for this answer
+                nodeCount--;
+                return;
+            }
+            int child = firstChild[parent];
+            while (child >= 0 && edgeDistance[child] != distance) {
+                child = nextSibling[child];
+            }
+            if (child < 0) {
+                edgeDistance[node] = distance;
+                nextSibling[node] = firstChild[parent];
+                firstChild[parent] = node;
+                return;
+            }
+            parent = child;
+        }
+    }
+
+    // best = {own distance, own node, other distance, other node}
+    private void search(int node, String guess, int answer, int radius, int[] best) {
+        int distance = distance(guess, terms[node]);
+        if (termAnswers[node] == answer) {
+            if (distance < best[0]) {
+                best[0] = distance;
+                best[1] = node;
+            }
+        } else if (distance < best[2]) {
+            best[2] = distance;
+            best[3] = node;
+        }
+
+        // By the triangle inequality, other subtrees hold nothing within the radius
+        for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+            if (Math.abs(edgeDistance[child] - distance) <= radius) {
+                search(child, guess, answer, radius, best);
+            }
+        }
+    }
+
+    // Levenshtein distance with two rolling rows
+    static int distance(String a, String b) {
+        if (a.length() < b.length()) {
+            String swap = a;
+            a = b;
+            b = swap;
+        }
+        int[][] rows = ROWS.get();
+        if (rows[0].length <= b.length()) {
+            rows[0] = new int[b.length() + 1];
+            rows[1] = new int[b.length() + 1];
+        }
+        int[] previous = rows[0];
+        int[] current = rows[1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = c == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1], previous[j]) + 1, previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
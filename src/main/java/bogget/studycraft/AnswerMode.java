@@ -0,0 +1,39 @@
+package bogget.studycraft;
+
+/**
+ * How players answer a quiz card.
+ */
+public enum AnswerMode {
+    // Pick one of four options
+    MULTIPLE_CHOICE("Choice", "Pick the right answer out of four options"),
+    // Type the answer; the server accepts small typos
+    TYPED("Typed", "Type the answer yourself; small typos are forgiven");
+
+    private final String label;
+    private final String description;
+
+    AnswerMode(String label, String description) {
+        this.label = label;
+        this.description = description;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public AnswerMode next() {
+        return values()[(ordinal() + 1) % values().length];
+    }
+
+    /**
+     * Looks up a mode sent over the network, falling back to multiple choice for unknown values.
+     */
+    public static AnswerMode byOrdinal(int ordinal) {
+        AnswerMode[] values = values();
+        return ordinal >= 0 && ordinal < values.length ? values[ordinal] : MULTIPLE_CHOICE;
+    }
+}
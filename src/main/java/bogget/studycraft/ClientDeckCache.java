@@ -0,0 +1,188 @@
+package bogget.studycraft;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The client's decks, kept on disk by hash so a deck is only ever downloaded
+ * once, whichever server it comes from. The deck the server last announced is
+ * kept in memory for decoding compact quiz cards.
+ *
+ * Everything except file access runs on the client thread, which is passed in
+ * as {@code clientThread}.
+ */
+public class ClientDeckCache {
+    private static final String EXTENSION = ".deck";
+    // Least recently used decks beyond this many are deleted
+    private static final int MAX_CACHED_DECKS = 32;
+
+    private final Path cacheDir;
+    private final Executor clientThread;
+
+    // The deck compact cards refer to, and its hash
+    private DeckSnapshot.Deck active;
+    private byte[] activeHash;
+    // The hash the server announced last; work for any other hash is stale
+    private byte[] announcedHash;
+    // A download in progress
+    private ByteArrayOutputStream download;
+    private int downloadChunks = 0;
+
+    public ClientDeckCache(Path cacheDir, Executor clientThread) {
+        this.cacheDir = cacheDir;
+        this.clientThread = clientThread;
+    }
+
+    /**
+     * Returns the deck compact cards refer to, or null if there is none yet.
+     */
+    public DeckSnapshot.Deck getActive() {
+        return active;
+    }
+
+    /**
+     * Handles the server announcing a deck. {@code reply} is told, on the client
+     * thread, whether the deck is now loaded or has to be downloaded.
+     */
+    public void onAnnounced(byte[] hash, Consumer<Boolean> reply) {
+        announcedHash = hash;
+        download = null;
+        if (Arrays.equals(hash, activeHash)) {
+            reply.accept(true);
+            return;
+        }
+        CompletableFuture.supplyAsync(() -> load(hash))
+            .thenAcceptAsync(deck -> {
+                if (!Arrays.equals(hash, announcedHash)) {
+                    return;
+                }
+                if (deck != null) {
+                    activate(hash, deck);
+                }
+                reply.accept(deck != null);
+            }, clientThread);
+    }
+
+    /**
+     * Adds a chunk of the announced deck. Once the last one is in, the deck is
+     * checked, stored, and {@code onStored} is run on the client thread.
+     */
+    public void onChunk(byte[] hash, int index, int total, byte[] data, Runnable onStored) {
+        if (!Arrays.equals(hash, announcedHash)) {
+            return;
+        }
+        if (index == 0) {
+            download = new ByteArrayOutputStream();
+            downloadChunks = 0;
+        }
+        if (download == null || index != downloadChunks) {
+            Studycraft.LOGGER.warn("Dropped out of order deck chunk {} of {}", index, total);
+            download = null;
+            return;
+        }
+        download.writeBytes(data);
+        if (++downloadChunks < total) {
+            return;
+        }
+
+        byte[] compressed = download.toByteArray();
+        download = null;
+        CompletableFuture.supplyAsync(() -> store(hash, compressed))
+            .thenAcceptAsync(deck -> {
+                if (deck != null && Arrays.equals(hash, announcedHash)) {
+                    activate(hash, deck);
+                    onStored.run();
+                }
+            }, clientThread);
+    }
+
+    private void activate(byte[] hash, DeckSnapshot.Deck deck) {
+        active = deck;
+        activeHash = hash;
+        Studycraft.LOGGER.info("Using cached deck {} ({} questions)", DeckSnapshot.toHex(hash), deck.getQuestionCount());
+    }
+
+    private Path deckFile(byte[] hash) {
+        return cacheDir.resolve(DeckSnapshot.toHex(hash) + EXTENSION);
+    }
+
+    // Reads a cached deck, or returns null if it is missing or damaged
+    private DeckSnapshot.Deck load(byte[] hash) {
+        Path file = deckFile(hash);
+        try {
+            DeckSnapshot.Deck deck = DeckSnapshot.decode(Files.readAllBytes(file), hash);
+            // Marks it recently used
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return deck;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            Studycraft.LOGGER.warn("Discarding damaged cached deck {}", file, e);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // Overwritten by the download anyway
+            }
+            return null;
+        }
+    }
+
+    // Checks a downloaded deck against its hash and writes it to the cache
+    private DeckSnapshot.Deck store(byte[] hash, byte[] compressed) {
+        DeckSnapshot.Deck deck;
+        try {
+            deck = DeckSnapshot.decode(compressed, hash);
+        } catch (IOException e) {
+            Studycraft.LOGGER.error("Received a damaged deck", e);
+            return null;
+        }
+        try {
+            Files.createDirectories(cacheDir);
+            Path file = deckFile(hash);
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, compressed);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            prune();
+        } catch (IOException e) {
+            // Still usable this session, it just downloads again next time
+            Studycraft.LOGGER.warn("Failed to cache deck in {}", cacheDir, e);
+        }
+        return deck;
+    }
+
+    private void prune() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(cacheDir)) {
+            files = stream.filter(file -> file.getFileName().toString().endsWith(EXTENSION)).toList();
+        }
+        if (files.size() <= MAX_CACHED_DECKS) {
+            return;
+        }
+        List<Path> oldestFirst = files.stream()
+            .sorted(Comparator.comparingLong(ClientDeckCache::lastModified))
+            .toList();
+        for (Path file : oldestFirst.subList(0, files.size() - MAX_CACHED_DECKS)) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -9,32 +9,75 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Client-side statistics class that stores a local copy of player statistics
- * received from the server.
+ * received from the server. The copy is kept up to date with {@link StatsDelta}s:
+ * the server sends everything once, then only the questions that change.
  */
 public class ClientStatistics {
     // Use ConcurrentHashMap for thread safety
     private final Map<String, QuizStatistics.StatsEntry> stats = new ConcurrentHashMap<>();
     private volatile float overallPercent = 0.0f;
+    // Totals over stats, recomputed whenever the stats are replaced
+    private volatile int totalCorrect = 0;
+    private volatile int totalAnswers = 0;
     private volatile boolean statsLoaded = false;
+    // Which of the server's stats our copy matches; 0 until the first full sync
+    private long epoch = 0;
+    private long version = 0;
+    // Question text by the server's question id, for deltas that leave it out
+    private final Map<Integer, String> questionTexts = new HashMap<>();
     
     /**
-     * Updates the client-side statistics with data received from the server.
-     * 
-     * @param newStats Map of question -> stats entry
-     * @param overallPercent The overall percentage of correct answers
+     * Applies stats received from the server. Returns false, and forgets the
+     * copy, if the delta does not fit it; the caller should then ask for the
+     * full stats again.
      */
-    public synchronized void updateStats(Map<String, QuizStatistics.StatsEntry> newStats, float overallPercent) {
-        this.stats.clear();
-        if (newStats != null) {
-            // Safely copy all non-null entries
-            for (Map.Entry<String, QuizStatistics.StatsEntry> entry : newStats.entrySet()) {
-                if (entry != null && entry.getKey() != null && entry.getValue() != null) {
-                    this.stats.put(entry.getKey(), entry.getValue());
-                }
+    public synchronized boolean applyDelta(StatsDelta delta) {
+        if (delta.isFull()) {
+            stats.clear();
+            questionTexts.clear();
+            totalCorrect = 0;
+            totalAnswers = 0;
+        } else if (delta.getEpoch() != epoch) {
+            clearStats();
+            return false;
+        }
+        
+        int correct = totalCorrect;
+        int answers = totalAnswers;
+        for (int i = 0; i < delta.size(); i++) {
+            int questionId = delta.getQuestionId(i);
+            String question = delta.getText(i) != null ? delta.getText(i) : questionTexts.get(questionId);
+            if (question == null) {
+                clearStats();
+                return false;
+            }
+            questionTexts.put(questionId, question);
+            
+            // Keep the totals running rather than summing every entry again
+            QuizStatistics.StatsEntry entry = delta.getEntry(i);
+            QuizStatistics.StatsEntry previous = stats.put(question, entry);
+            if (previous != null) {
+                correct -= previous.getTimesCorrect();
+                answers -= previous.getTotal();
             }
-            this.overallPercent = Float.isNaN(overallPercent) ? 0.0f : overallPercent;
-            this.statsLoaded = true;
+            correct += entry.getTimesCorrect();
+            answers += entry.getTotal();
         }
+        totalCorrect = correct;
+        totalAnswers = answers;
+        overallPercent = answers > 0 ? (float) correct / answers * 100f : 0.0f;
+        epoch = delta.getEpoch();
+        version = delta.getVersion();
+        statsLoaded = true;
+        return true;
+    }
+    
+    public synchronized long getEpoch() {
+        return epoch;
+    }
+    
+    public synchronized long getVersion() {
+        return version;
     }
     
     /**
@@ -61,13 +104,10 @@ public class ClientStatistics {
      * @return Total correct answers
      */
     public int getTotalCorrect() {
-        int total = 0;
-        for (QuizStatistics.StatsEntry entry : stats.values()) {
-            if (entry != null) {
-                total += entry.getTimesCorrect();
-            }
+        if (Studycraft.DEBUG_STATS) {
+            checkTotals();
         }
-        return total;
+        return totalCorrect;
     }
 
     /**
@@ -76,13 +116,23 @@ public class ClientStatistics {
      * @return Total answers
      */
     public int getTotalAnswers() {
-        int total = 0;
+        return totalAnswers;
+    }
+
+    /**
+     * Debug only: recomputes the totals from the stored entries and logs any drift.
+     */
+    private synchronized void checkTotals() {
+        int correct = 0;
+        int answers = 0;
         for (QuizStatistics.StatsEntry entry : stats.values()) {
-            if (entry != null) {
-                total += entry.getTotal();
-            }
+            correct += entry.getTimesCorrect();
+            answers += entry.getTotal();
+        }
+        if (correct != totalCorrect || answers != totalAnswers) {
+            Studycraft.LOGGER.warn("Client quiz statistics totals drifted: running {}/{}, recomputed {}/{}",
+                totalCorrect, totalAnswers, correct, answers);
         }
-        return total;
     }
 
     /**
@@ -142,7 +192,12 @@ public class ClientStatistics {
      */
     public synchronized void clearStats() {
         this.stats.clear();
+        this.questionTexts.clear();
+        this.epoch = 0;
+        this.version = 0;
         this.overallPercent = 0.0f;
+        this.totalCorrect = 0;
+        this.totalAnswers = 0;
         this.statsLoaded = false;
     }
     
@@ -0,0 +1,115 @@
+package bogget.studycraft;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.scoreboard.AbstractTeam;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.world.PersistentState;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Which deck each player and scoreboard team studies, saved with the world. A
+ * player's own assignment wins over their team's; anyone with neither gets the
+ * {@link DeckRegistry#DEFAULT_DECK default deck}.
+ *
+ * Server thread only.
+ */
+public class DeckAssignments extends PersistentState {
+    private static final String STATE_ID = "studycraft_decks";
+
+    private final Map<UUID, String> playerDecks = new HashMap<>();
+    private final Map<String, String> teamDecks = new HashMap<>();
+
+    private DeckAssignments() {}
+
+    public static DeckAssignments getOrCreate(MinecraftServer server) {
+        return server.getOverworld().getPersistentStateManager().getOrCreate(
+            DeckAssignments::fromNbt,
+            DeckAssignments::new,
+            STATE_ID
+        );
+    }
+
+    private static DeckAssignments fromNbt(NbtCompound nbt) {
+        DeckAssignments assignments = new DeckAssignments();
+        NbtCompound players = nbt.getCompound("Players");
+        for (String key : players.getKeys()) {
+            try {
+                assignments.playerDecks.put(UUID.fromString(key), players.getString(key));
+            } catch (IllegalArgumentException e) {
+                Studycraft.LOGGER.warn("Ignoring deck assignment for invalid player id {}", key);
+            }
+        }
+        NbtCompound teams = nbt.getCompound("Teams");
+        for (String key : teams.getKeys()) {
+            assignments.teamDecks.put(key, teams.getString(key));
+        }
+        return assignments;
+    }
+
+    @Override
+    public NbtCompound writeNbt(NbtCompound nbt) {
+        NbtCompound players = new NbtCompound();
+        for (Map.Entry<UUID, String> entry : playerDecks.entrySet()) {
+            players.putString(entry.getKey().toString(), entry.getValue());
+        }
+        NbtCompound teams = new NbtCompound();
+        for (Map.Entry<String, String> entry : teamDecks.entrySet()) {
+            teams.putString(entry.getKey(), entry.getValue());
+        }
+        nbt.put("Players", players);
+        nbt.put("Teams", teams);
+        return nbt;
+    }
+
+    /**
+     * Returns the name of the deck this player should be quizzed from.
+     */
+    public String resolve(ServerPlayerEntity player) {
+        String deck = playerDecks.get(player.getUuid());
+        if (deck != null) {
+            return deck;
+        }
+        AbstractTeam team = player.getScoreboardTeam();
+        if (team != null) {
+            deck = teamDecks.get(team.getName());
+            if (deck != null) {
+                return deck;
+            }
+        }
+        return DeckRegistry.DEFAULT_DECK;
+    }
+
+    public void assignPlayer(UUID playerId, String deck) {
+        playerDecks.put(playerId, deck);
+        markDirty();
+    }
+
+    public void assignTeam(String team, String deck) {
+        teamDecks.put(team, deck);
+        markDirty();
+    }
+
+    public boolean clearPlayer(UUID playerId) {
+        boolean removed = playerDecks.remove(playerId) != null;
+        if (removed) {
+            markDirty();
+        }
+        return removed;
+    }
+
+    public boolean clearTeam(String team) {
+        boolean removed = teamDecks.remove(team) != null;
+        if (removed) {
+            markDirty();
+        }
+        return removed;
+    }
+
+    public Map<String, String> getTeamDecks() {
+        return teamDecks;
+    }
+}
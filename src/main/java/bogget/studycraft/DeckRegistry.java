@@ -0,0 +1,407 @@
+package bogget.studycraft;
+
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named question decks, each read from {@code config/studycraft/decks/<name>.txt}
+ * the first time a player who is assigned it needs it. A loaded deck is shared by
+ * everyone using it and is dropped again once the last of them logs off or moves
+ * to another deck. The {@link #DEFAULT_DECK default deck} is the bank set through
+ * the config screen, saved as {@code default.txt}, and is always kept.
+ *
+ * Decks are parsed off the server thread. Until a deck is ready its players are
+ * quizzed from the default deck. When a deck file changes on disk, a loaded deck
+ * is parsed again in the background and swapped in once it is ready; if the new
+ * file fails to load the old deck stays.
+ *
+ * Server thread only.
+ */
+public class DeckRegistry {
+    public static final String DEFAULT_DECK = "default";
+    private static final String DECK_EXTENSION = ".txt";
+    // Written out as the default deck the first time a world starts, for players to replace
+    public static final String BUILT_IN_DECK = """
+Lithium	Crimson flame
+Sodium	Yellow flame
+Potassium	Lilac flame
+Calcium	Orange-red flame
+Forms a white precipitate in sodium hydroxide
+Copper	Green flame
+Aluminium	Forms a white precipitate in sodium hydroxide
+Aluminium hydroxide dissolves in excess sodium hydroxide
+Copper (II)	Forms a blue precipitate in sodium hydroxide
+Iron (II)	Forms a green precipitate in sodium hydroxide
+Iron (III)	Forms a brown precipitate in sodium hydroxide
+Carbonates	Dissolves in a dilute acid to produce carbon dioxide which can be tested with lime water
+Bromide	Produces a cream precipitate with silver nitrate in the presence of dilute nitric acid
+Chloride	Produces a white precipitate with silver nitrate in the presence of dilute nitric acid
+Iodide	Produces a yellow precipitate with silver nitrate in the presence of dilute nitric acid
+Sulfate	Produce a white precipitate with barium chloride in the presence of dilute hydrochloric acid
+""";
+
+
+    // The default deck's file text and the bank parsed from it
+    private static class DefaultDeck {
+        private final String text;
+        private final QuestionBank bank;
+
+        DefaultDeck(String text, QuestionBank bank) {
+            this.text = text;
+            this.bank = bank;
+        }
+    }
+
+    private static class Deck {
+        private CompletableFuture<QuestionBank> bank;
+        // Online players currently quizzed from this deck
+        private int users = 0;
+
+        Deck(CompletableFuture<QuestionBank> bank) {
+            this.bank = bank;
+        }
+    }
+
+    private final MinecraftServer server;
+    private final Path deckDir;
+    private final DeckAssignments assignments;
+    private final Map<String, Deck> decks = new HashMap<>();
+    // The deck each online player holds a reference to
+    private final Map<UUID, String> playerDecks = new HashMap<>();
+    private DeckWatcher watcher;
+    // SHA-256 of the text we last wrote to each deck file, so the watcher skips our own writes
+    private final Map<String, byte[]> ownWrites = new ConcurrentHashMap<>();
+    // Saves of the default deck, chained so they land on disk in order; read by the watcher
+    private volatile CompletableFuture<Void> pendingSave = CompletableFuture.completedFuture(null);
+    // Text of the installed default deck; read by the config screen's editor in single-player
+    private volatile String defaultDeckText = BUILT_IN_DECK;
+    // Versions of the default deck in the order their texts arrived, so a parse that
+    // finishes late never replaces a newer deck; the installed one is server thread only
+    private final AtomicLong defaultDeckVersions = new AtomicLong();
+    private long installedDefaultVersion = 0;
+
+    public DeckRegistry(MinecraftServer server) {
+        this.server = server;
+        this.deckDir = FabricLoader.getInstance().getConfigDir().resolve(Studycraft.MOD_ID).resolve("decks");
+        this.assignments = DeckAssignments.getOrCreate(server);
+        try {
+            Files.createDirectories(deckDir);
+            watcher = new DeckWatcher(deckDir, DECK_EXTENSION, this::onDeckFileChanged);
+        } catch (IOException e) {
+            Studycraft.LOGGER.error("Failed to watch deck directory {}, deck files will not reload", deckDir, e);
+        }
+
+        // Pick up the default deck saved last time, or write out the built-in one to edit
+        if (Files.isRegularFile(deckFile(DEFAULT_DECK))) {
+            reload(DEFAULT_DECK);
+        } else {
+            saveDefaultDeck(BUILT_IN_DECK);
+        }
+    }
+
+    public DeckAssignments getAssignments() {
+        return assignments;
+    }
+
+    public Path getDeckDir() {
+        return deckDir;
+    }
+
+    /**
+     * Returns the text of the default deck that is in use.
+     */
+    public String getDefaultDeckText() {
+        return defaultDeckText;
+    }
+
+    /**
+     * Deck names become file names, so only lowercase letters, digits, '-' and '_'
+     * are allowed.
+     */
+    public static boolean isValidName(String name) {
+        if (name.isEmpty() || name.length() > 64) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '-' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean exists(String name) {
+        return DEFAULT_DECK.equals(name) || isValidName(name) && Files.isRegularFile(deckFile(name));
+    }
+
+    /**
+     * Lists the decks that can be assigned: the default deck and every deck file.
+     */
+    public List<String> listDecks() {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(deckDir, "*" + DECK_EXTENSION)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - DECK_EXTENSION.length());
+                if (isValidName(name) && !DEFAULT_DECK.equals(name)) {
+                    names.add(name);
+                }
+            }
+        } catch (IOException e) {
+            Studycraft.LOGGER.warn("Failed to list decks in {}", deckDir, e);
+        }
+        Collections.sort(names);
+        names.add(0, DEFAULT_DECK);
+        return names;
+    }
+
+    /**
+     * Returns the number of online players using each deck that is in memory.
+     */
+    public Map<String, Integer> getLoadedDecks() {
+        Map<String, Integer> loaded = new HashMap<>();
+        for (Map.Entry<String, Deck> entry : decks.entrySet()) {
+            loaded.put(entry.getKey(), entry.getValue().users);
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns the bank to quiz this player from, moving them onto a different deck
+     * first if their assignment or team has changed.
+     */
+    public QuestionBank getBank(ServerPlayerEntity player) {
+        String name = assignments.resolve(player);
+        String held = playerDecks.get(player.getUuid());
+        if (!name.equals(held)) {
+            // Take the new reference before dropping the old one, so nothing reloads needlessly
+            acquire(name);
+            playerDecks.put(player.getUuid(), name);
+            if (held != null) {
+                release(held);
+            }
+        }
+
+        Deck deck = decks.get(name);
+        if (deck != null && deck.bank.isDone() && !deck.bank.isCompletedExceptionally()) {
+            return deck.bank.join();
+        }
+        return Studycraft.getQuestionBank();
+    }
+
+    /**
+     * Starts loading the player's deck so it is ready by their first quiz. The
+     * result completes on the server thread with the bank they will be quizzed
+     * from: their deck once it has loaded, or the default deck if it fails to.
+     */
+    public CompletableFuture<QuestionBank> playerJoined(ServerPlayerEntity player) {
+        getBank(player);
+        Deck deck = decks.get(playerDecks.get(player.getUuid()));
+        if (deck == null) {
+            return CompletableFuture.completedFuture(Studycraft.getQuestionBank());
+        }
+        return deck.bank.handleAsync((bank, error) -> error == null ? bank : Studycraft.getQuestionBank(), server);
+    }
+
+    public void playerLeft(UUID playerId) {
+        String held = playerDecks.remove(playerId);
+        if (held != null) {
+            release(held);
+        }
+    }
+
+    /**
+     * Writes the default deck's text to {@code default.txt} off the server thread,
+     * replacing the old file in one step so a crash never leaves half a deck.
+     */
+    public void saveDefaultDeck(String content) {
+        Path file = deckFile(DEFAULT_DECK);
+        pendingSave = pendingSave.thenRunAsync(() -> {
+            byte[] data = content.getBytes(StandardCharsets.UTF_8);
+            // Recorded before the file changes, so the watcher can never see the write first
+            ownWrites.put(DEFAULT_DECK, DeckSnapshot.sha256(data));
+            try {
+                Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.write(temp, data);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Studycraft.LOGGER.error("Failed to save the default deck to {}", file, e);
+            }
+        });
+    }
+
+    /**
+     * Numbers a new text of the default deck, before it is parsed. Thread-safe.
+     */
+    public long nextDefaultDeckVersion() {
+        return defaultDeckVersions.incrementAndGet();
+    }
+
+    /**
+     * Makes a newly parsed default deck the active bank, and its text the one the
+     * config screen edits, unless a newer version is already in. Returns whether
+     * it was installed. Server thread.
+     */
+    public boolean installDefaultDeck(long version, String text, QuestionBank bank) {
+        if (version < installedDefaultVersion) {
+            Studycraft.LOGGER.info("Skipping an outdated default deck, a newer one is already installed");
+            return false;
+        }
+        installedDefaultVersion = version;
+        defaultDeckText = text;
+        Studycraft.installQuestionBank(bank);
+        return true;
+    }
+
+    /**
+     * Parses a deck's file again and swaps the new deck in on the server thread.
+     * Decks nobody is using are skipped, since they are read fresh on next use.
+     */
+    public void reload(String name) {
+        if (DEFAULT_DECK.equals(name)) {
+            long version = nextDefaultDeckVersion();
+            parseDefault().whenCompleteAsync((deck, error) -> {
+                if (error != null) {
+                    Studycraft.LOGGER.error("Failed to reload the default deck, keeping the current one", error);
+                } else {
+                    installDefaultDeck(version, deck.text, deck.bank);
+                }
+            }, server);
+            return;
+        }
+
+        Deck deck = decks.get(name);
+        if (deck == null) {
+            return;
+        }
+        parse(name).whenCompleteAsync((bank, error) -> {
+            if (error != null) {
+                Studycraft.LOGGER.error("Failed to reload deck {}, keeping the current one", name, error);
+            } else if (decks.get(name) == deck) {
+                deck.bank = CompletableFuture.completedFuture(bank);
+                Studycraft.LOGGER.info("Reloaded deck {} with {} questions", name, bank.getQuestionCount());
+            }
+        }, server);
+    }
+
+    /**
+     * Stops watching the deck files and waits for the default deck to be saved.
+     */
+    public void close() {
+        if (watcher != null) {
+            watcher.close();
+        }
+        pendingSave.join();
+    }
+
+    // Called on the watcher thread
+    private void onDeckFileChanged(String name) {
+        if (DEFAULT_DECK.equals(name) && !pendingSave.isDone()) {
+            // A save still to land overwrites the file anyway, and is checked once it does
+            return;
+        }
+        byte[] written = ownWrites.get(name);
+        if (written != null) {
+            try {
+                if (Arrays.equals(DeckSnapshot.sha256(Files.readAllBytes(deckFile(name))), written)) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Deleted again already; nothing to reload
+                return;
+            }
+        }
+        server.execute(() -> reload(name));
+    }
+
+    private void acquire(String name) {
+        if (DEFAULT_DECK.equals(name)) {
+            return;
+        }
+        decks.computeIfAbsent(name, this::load).users++;
+    }
+
+    private void release(String name) {
+        Deck deck = decks.get(name);
+        if (deck != null && --deck.users <= 0) {
+            // A load still in flight finishes into a future nothing refers to
+            decks.remove(name);
+            Studycraft.LOGGER.info("Unloaded deck {}", name);
+        }
+    }
+
+    private Deck load(String name) {
+        CompletableFuture<QuestionBank> bank = parse(name);
+        bank.whenComplete((loaded, error) -> {
+            if (error != null) {
+                Studycraft.LOGGER.error("Failed to load deck {}, using the default deck instead", name, error);
+            } else {
+                Studycraft.LOGGER.info("Loaded deck {} with {} questions", name, loaded.getQuestionCount());
+            }
+        });
+        return new Deck(bank);
+    }
+
+    private CompletableFuture<QuestionBank> parse(String name) {
+        QuizStatistics stats = Studycraft.getQuizStatistics();
+        return CompletableFuture.supplyAsync(() -> {
+            if (!isValidName(name)) {
+                throw new IllegalArgumentException("Invalid deck name " + name);
+            }
+            Path file = deckFile(name);
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                QuestionBank loaded = QuestionBank.ofDeck(QuestionBankParser.parse(reader));
+                // QuestionIndex is synchronized, so ids can be handed out here
+                if (stats != null) {
+                    stats.registerQuestions(loaded);
+                }
+                return loaded;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read deck " + file, e);
+            }
+        });
+    }
+
+    // The default deck also backs the config screen's editor, so it keeps the raw text
+    private CompletableFuture<DefaultDeck> parseDefault() {
+        Path file = deckFile(DEFAULT_DECK);
+        QuizStatistics stats = Studycraft.getQuizStatistics();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                String text = Files.readString(file, StandardCharsets.UTF_8);
+                QuestionBank loaded = new QuestionBank(text);
+                if (stats != null) {
+                    stats.registerQuestions(loaded);
+                }
+                return new DefaultDeck(text, loaded);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read deck " + file, e);
+            }
+        });
+    }
+
+    private Path deckFile(String name) {
+        return deckDir.resolve(name + DECK_EXTENSION);
+    }
+}
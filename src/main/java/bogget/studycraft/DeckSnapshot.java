@@ -0,0 +1,189 @@
+package bogget.studycraft;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The part of a compiled deck a client needs to show quiz cards by id: every
+ * question, every distinct answer, and which answer each question has. The
+ * snapshot is deflated and named by the SHA-256 of its uncompressed form, so a
+ * client that has seen a deck before, on any server, can tell from the hash
+ * alone and skip the download.
+ *
+ * Layout, before compression: answer count, answers, question count, then each
+ * question's text and answer id. Counts and ids are ints; strings are an int
+ * byte length followed by UTF-8.
+ */
+public class DeckSnapshot {
+    private final byte[] hash;
+    private final byte[] compressed;
+
+    private DeckSnapshot(byte[] hash, byte[] compressed) {
+        this.hash = hash;
+        this.compressed = compressed;
+    }
+
+    /**
+     * The questions and answers of a snapshot, as the client keeps them.
+     */
+    public static class Deck {
+        private final String[] questions;
+        private final int[] questionAnswers;
+        private final String[] answers;
+
+        Deck(String[] questions, int[] questionAnswers, String[] answers) {
+            this.questions = questions;
+            this.questionAnswers = questionAnswers;
+            this.answers = answers;
+        }
+
+        public int getQuestionCount() {
+            return questions.length;
+        }
+
+        public String getQuestionText(int index) {
+            return questions[index];
+        }
+
+        public String getAnswerText(int index) {
+            return answers[questionAnswers[index]];
+        }
+
+        public int getAnswerId(int index) {
+            return questionAnswers[index];
+        }
+
+        public int getAnswerCount() {
+            return answers.length;
+        }
+
+        public String getAnswerById(int answerId) {
+            return answers[answerId];
+        }
+    }
+
+    /**
+     * Encodes a bank. Takes a while for big decks, so call it off the server
+     * thread; {@link QuestionBank#getSnapshot()} does this once per bank.
+     */
+    public static DeckSnapshot of(QuestionBank bank) {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(raw)) {
+            out.writeInt(bank.getAnswerCount());
+            for (int a = 0; a < bank.getAnswerCount(); a++) {
+                writeString(out, bank.getAnswerById(a));
+            }
+            out.writeInt(bank.getQuestionCount());
+            for (int i = 0; i < bank.getQuestionCount(); i++) {
+                writeString(out, bank.getQuestionText(i));
+                out.writeInt(bank.getAnswerId(i));
+            }
+        } catch (IOException e) {
+            // Writing to memory
+            throw new IllegalStateException(e);
+        }
+        byte[] data = raw.toByteArray();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(compressed)) {
+            out.write(data);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return new DeckSnapshot(sha256(data), compressed.toByteArray());
+    }
+
+    /**
+     * Inflates and decodes a snapshot, checking it against the hash it was sent
+     * or stored under.
+     */
+    public static Deck decode(byte[] compressed, byte[] expectedHash) throws IOException {
+        byte[] data;
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+            data = in.readNBytes(DeckUploads.MAX_TEXT_BYTES * 2);
+        }
+        if (!Arrays.equals(sha256(data), expectedHash)) {
+            throw new IOException("Deck does not match its hash");
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        String[] answers = new String[checkCount(in.readInt(), data.length)];
+        for (int a = 0; a < answers.length; a++) {
+            answers[a] = readString(in);
+        }
+        int questionCount = checkCount(in.readInt(), data.length);
+        String[] questions = new String[questionCount];
+        int[] questionAnswers = new int[questionCount];
+        for (int i = 0; i < questionCount; i++) {
+            questions[i] = readString(in);
+            questionAnswers[i] = in.readInt();
+            if (questionAnswers[i] < 0 || questionAnswers[i] >= answers.length) {
+                throw new IOException("Answer id out of range: " + questionAnswers[i]);
+            }
+        }
+        return new Deck(questions, questionAnswers, answers);
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+
+    public static String toHex(byte[] hash) {
+        return HexFormat.of().formatHex(hash);
+    }
+
+    public byte[] getCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Cuts the compressed snapshot into pieces of at most {@code chunkSize} bytes.
+     */
+    public byte[][] getChunks(int chunkSize) {
+        byte[][] chunks = new byte[Math.max(1, (compressed.length + chunkSize - 1) / chunkSize)][];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = Arrays.copyOfRange(compressed, i * chunkSize, Math.min(compressed.length, (i + 1) * chunkSize));
+        }
+        return chunks;
+    }
+
+    static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[checkCount(in.readInt(), in.available())];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // A count can never exceed the bytes left, which stops a bad snapshot allocating huge arrays
+    private static int checkCount(int count, int limit) throws IOException {
+        if (count < 0 || count > limit) {
+            throw new IOException("Bad count in deck snapshot: " + count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,94 @@
+package bogget.studycraft;
+
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks which deck each player's client has cached, so quiz cards can refer to
+ * questions and answers by id instead of sending their text every time.
+ *
+ * Whenever a player's deck changes the server announces the deck's hash. The
+ * client answers whether it has that deck cached; if not, the server sends it,
+ * and the client confirms once it is stored. From then on the player's cards
+ * are compact, until their deck changes again.
+ *
+ * Announcements and replies are handled on the server thread.
+ * {@link #isReady} may be called from any thread.
+ */
+public class DeckSync {
+    private static class PlayerSync {
+        // The deck last announced to the client, and its snapshot once built
+        private QuestionBank announced;
+        private DeckSnapshot snapshot;
+        // The deck the client has confirmed it holds
+        private volatile QuestionBank ready;
+    }
+
+    private final Map<UUID, PlayerSync> players = new ConcurrentHashMap<>();
+
+    /**
+     * Tells the player's client which deck they are now using, unless it already
+     * knows. The snapshot is built off the server thread.
+     */
+    public void announce(ServerPlayerEntity player, QuestionBank bank) {
+        PlayerSync sync = players.computeIfAbsent(player.getUuid(), id -> new PlayerSync());
+        if (sync.announced == bank) {
+            return;
+        }
+        sync.announced = bank;
+        sync.snapshot = null;
+        sync.ready = null;
+
+        CompletableFuture.supplyAsync(bank::getSnapshot)
+            .thenAccept(snapshot -> player.getServer().execute(() -> {
+                // Skip it if the player left or moved on to another deck meanwhile
+                if (players.get(player.getUuid()) == sync && sync.announced == bank) {
+                    sync.snapshot = snapshot;
+                    StudycraftNetworking.sendDeckHashPacket(player, snapshot);
+                }
+            }))
+            .exceptionally(e -> {
+                Studycraft.LOGGER.error("Failed to build deck snapshot", e);
+                return null;
+            });
+    }
+
+    /**
+     * Handles the client's reply to an announcement: either it has the deck, or
+     * it needs it sent.
+     */
+    public void onClientStatus(ServerPlayerEntity player, byte[] hash, boolean cached) {
+        PlayerSync sync = players.get(player.getUuid());
+        if (sync == null || sync.snapshot == null || !Arrays.equals(sync.snapshot.getHash(), hash)) {
+            // A reply to an older announcement
+            return;
+        }
+        if (cached) {
+            sync.ready = sync.announced;
+            // Cards already pooled for this player are full ones; make compact ones instead
+            QuizPacketPool pool = Studycraft.getQuizPacketPool();
+            if (pool != null) {
+                pool.invalidate(player.getUuid());
+            }
+        } else {
+            StudycraftNetworking.sendDeckDataPackets(player, sync.snapshot);
+        }
+    }
+
+    /**
+     * Returns whether cards from {@code bank} can be sent to the player by id.
+     */
+    public boolean isReady(UUID playerId, QuestionBank bank) {
+        PlayerSync sync = players.get(playerId);
+        return sync != null && sync.ready == bank;
+    }
+
+    public void remove(UUID playerId) {
+        players.remove(playerId);
+    }
+}
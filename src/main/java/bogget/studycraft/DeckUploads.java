@@ -0,0 +1,242 @@
+package bogget.studycraft;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Question bank uploads from the config screen, which can be far larger than
+ * one packet allows. The client deflates the text and sends it as numbered
+ * chunks of at most {@link #CHUNK_SIZE} bytes, each tagged with a transfer id,
+ * the length of the text and its CRC32. The server inflates chunks as they
+ * arrive, on its own worker thread, and hands over the text once the last one
+ * is in and the length and checksum match.
+ *
+ * A player has at most one upload in progress; starting another drops it.
+ */
+public class DeckUploads {
+    // Compressed bytes per chunk, well inside the 32 KiB client payload limit
+    public static final int CHUNK_SIZE = 30_000;
+    // Longest question bank accepted, as UTF-8
+    public static final int MAX_TEXT_BYTES = 16 << 20;
+    // Deflate never grows text by much, so this bounds a transfer regardless of what the client claims
+    private static final int MAX_CHUNKS = MAX_TEXT_BYTES / CHUNK_SIZE + 2;
+
+    /**
+     * Told about one upload's progress, on the worker thread.
+     */
+    public interface Listener {
+        void onProgress(int transferId, int received, int total);
+
+        void onComplete(int transferId, String content);
+
+        void onFailed(int transferId, String reason);
+    }
+
+    /**
+     * A question bank ready to send: its deflated text cut into chunks.
+     */
+    public static class Encoded {
+        private final byte[][] chunks;
+        private final int textLength;
+        private final int crc;
+
+        Encoded(byte[][] chunks, int textLength, int crc) {
+            this.chunks = chunks;
+            this.textLength = textLength;
+            this.crc = crc;
+        }
+
+        public byte[][] getChunks() {
+            return chunks;
+        }
+
+        public int getTextLength() {
+            return textLength;
+        }
+
+        public int getCrc() {
+            return crc;
+        }
+    }
+
+    private static class Upload {
+        private final int transferId;
+        private final int total;
+        private final int textLength;
+        private final int crc;
+        private final Inflater inflater = new Inflater();
+        private final CRC32 checksum = new CRC32();
+        private byte[] text;
+        private int textSize = 0;
+        private int received = 0;
+
+        Upload(int transferId, int total, int textLength, int crc) {
+            this.transferId = transferId;
+            this.total = total;
+            this.textLength = textLength;
+            this.crc = crc;
+            // Grown as the text inflates, so a false length costs nothing up front
+            this.text = new byte[Math.min(textLength, 64 * 1024)];
+        }
+    }
+
+    // Only touched on the worker thread
+    private final Map<UUID, Upload> uploads = new HashMap<>();
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "StudyCraft Deck Upload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Deflates a question bank and cuts it into chunks. Runs anywhere; the client
+     * calls it off the render thread.
+     */
+    public static Encoded encode(String content) {
+        byte[] text = content.getBytes(StandardCharsets.UTF_8);
+        CRC32 checksum = new CRC32();
+        checksum.update(text);
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(text.length / 4 + 64);
+        try {
+            deflater.setInput(text);
+            deflater.finish();
+            byte[] buffer = new byte[CHUNK_SIZE];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+
+        byte[] data = compressed.toByteArray();
+        byte[][] chunks = new byte[Math.max(1, (data.length + CHUNK_SIZE - 1) / CHUNK_SIZE)][];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = Arrays.copyOfRange(data, i * CHUNK_SIZE, Math.min(data.length, (i + 1) * CHUNK_SIZE));
+        }
+        return new Encoded(chunks, text.length, (int) checksum.getValue());
+    }
+
+    /**
+     * Queues one received chunk. Chunks of a transfer must arrive in order,
+     * which they do over a single connection.
+     */
+    public void receive(UUID playerId, int transferId, int index, int total, int textLength, int crc, byte[] data, Listener listener) {
+        worker.execute(() -> {
+            try {
+                accept(playerId, transferId, index, total, textLength, crc, data, listener);
+            } catch (RuntimeException e) {
+                Studycraft.LOGGER.error("Failed to receive question bank upload", e);
+                fail(playerId, transferId, "internal error", listener);
+            }
+        });
+    }
+
+    /**
+     * Drops a player's upload, as when they leave mid-transfer.
+     */
+    public void remove(UUID playerId) {
+        worker.execute(() -> {
+            Upload upload = uploads.remove(playerId);
+            if (upload != null) {
+                upload.inflater.end();
+            }
+        });
+    }
+
+    public void close() {
+        worker.shutdownNow();
+    }
+
+    private void accept(UUID playerId, int transferId, int index, int total, int textLength, int crc, byte[] data, Listener listener) {
+        Upload upload = uploads.get(playerId);
+        if (upload != null && upload.transferId != transferId) {
+            // A newer upload replaces one still in progress
+            uploads.remove(playerId);
+            upload.inflater.end();
+            upload = null;
+        }
+        if (upload == null) {
+            if (index != 0) {
+                // The start of this transfer was rejected or belonged to an upload that was replaced
+                return;
+            }
+            if (total <= 0 || total > MAX_CHUNKS || textLength < 0 || textLength > MAX_TEXT_BYTES) {
+                listener.onFailed(transferId, "question bank is too large (at most " + (MAX_TEXT_BYTES >> 20) + " MB)");
+                return;
+            }
+            upload = new Upload(transferId, total, textLength, crc);
+            uploads.put(playerId, upload);
+        }
+        if (index != upload.received || total != upload.total || textLength != upload.textLength || crc != upload.crc) {
+            fail(playerId, transferId, "chunk " + index + " does not belong to the upload", listener);
+            return;
+        }
+
+        if (!inflate(upload, data)) {
+            fail(playerId, transferId, "data is corrupt or longer than announced", listener);
+            return;
+        }
+        upload.received++;
+        listener.onProgress(transferId, upload.received, upload.total);
+        if (upload.received < upload.total) {
+            return;
+        }
+
+        uploads.remove(playerId);
+        boolean finished = upload.inflater.finished();
+        upload.inflater.end();
+        if (!finished || upload.textSize != upload.textLength || (int) upload.checksum.getValue() != upload.crc) {
+            listener.onFailed(transferId, "checksum mismatch, the upload was damaged");
+            return;
+        }
+        listener.onComplete(transferId, new String(upload.text, 0, upload.textSize, StandardCharsets.UTF_8));
+    }
+
+    // Inflates one chunk onto the text, never past the announced length
+    private static boolean inflate(Upload upload, byte[] data) {
+        Inflater inflater = upload.inflater;
+        inflater.setInput(data);
+        try {
+            while (!inflater.needsInput() && !inflater.finished()) {
+                if (upload.textSize == upload.text.length) {
+                    if (upload.textSize == upload.textLength) {
+                        // Anything left over means more text than announced
+                        return inflater.inflate(new byte[1]) == 0;
+                    }
+                    int capacity = (int) Math.min(upload.textLength, upload.text.length * 2L);
+                    upload.text = Arrays.copyOf(upload.text, capacity);
+                }
+                int inflated = inflater.inflate(upload.text, upload.textSize, upload.text.length - upload.textSize);
+                upload.checksum.update(upload.text, upload.textSize, inflated);
+                upload.textSize += inflated;
+                if (inflated == 0 && inflater.needsDictionary()) {
+                    return false;
+                }
+            }
+        } catch (DataFormatException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private void fail(UUID playerId, int transferId, String reason, Listener listener) {
+        Upload upload = uploads.remove(playerId);
+        if (upload != null) {
+            upload.inflater.end();
+        }
+        listener.onFailed(transferId, reason);
+    }
+}
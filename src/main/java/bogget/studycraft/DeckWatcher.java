@@ -0,0 +1,105 @@
+package bogget.studycraft;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Watches the deck directory and reports the name of each deck whose file is
+ * created or changed, on its own daemon thread. Editors often write a file in
+ * several steps, so events are collected for a short while and each deck is
+ * reported once per burst.
+ */
+public class DeckWatcher implements AutoCloseable {
+    // How long to wait for a burst of writes to settle before reporting it
+    private static final long SETTLE_MS = 250;
+
+    private final Path deckDir;
+    private final String extension;
+    private final Consumer<String> onChange;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    public DeckWatcher(Path deckDir, String extension, Consumer<String> onChange) throws IOException {
+        this.deckDir = deckDir;
+        this.extension = extension;
+        this.onChange = onChange;
+        this.watchService = deckDir.getFileSystem().newWatchService();
+        deckDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::run, "StudyCraft Deck Watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Thread.sleep(SETTLE_MS);
+
+                Set<String> changed = new LinkedHashSet<>();
+                while (key != null) {
+                    collect(key, changed);
+                    key.reset();
+                    key = watchService.poll();
+                }
+                for (String name : changed) {
+                    onChange.accept(name);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed with the server
+        } catch (RuntimeException e) {
+            Studycraft.LOGGER.error("Deck watcher stopped, deck files will no longer reload", e);
+        }
+    }
+
+    private void collect(WatchKey key, Set<String> changed) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Some events were lost, so treat every deck as changed
+                collectAll(changed);
+            } else if (event.context() instanceof Path file) {
+                addDeck(file.getFileName().toString(), changed);
+            }
+        }
+    }
+
+    private void collectAll(Set<String> changed) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(deckDir, "*" + extension)) {
+            for (Path file : files) {
+                addDeck(file.getFileName().toString(), changed);
+            }
+        } catch (IOException e) {
+            Studycraft.LOGGER.warn("Failed to list decks in {}", deckDir, e);
+        }
+    }
+
+    private void addDeck(String fileName, Set<String> changed) {
+        if (fileName.endsWith(extension)) {
+            String name = fileName.substring(0, fileName.length() - extension.length());
+            if (DeckRegistry.isValidName(name)) {
+                changed.add(name);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            Studycraft.LOGGER.warn("Failed to close deck watcher", e);
+        }
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,179 @@
+package bogget.studycraft;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * For each distinct answer in a deck, a shortlist of the other answers that look
+ * most like it, so wrong options are plausible ("Lilac flame" next to "Crimson
+ * flame" rather than next to a precipitate test).
+ *
+ * Similarity is the Jaccard similarity of the answers' character trigrams,
+ * estimated with MinHash signatures. Candidates are found by locality-sensitive
+ * hashing: each signature is cut into bands, and answers that agree on a whole
+ * band are compared. Only those candidates are scored, so building the index is
+ * close to linear in the number of answers, and signatures and shortlists are
+ * computed in parallel for large decks. Small decks simply compare every pair.
+ * Looking up a shortlist is O(1).
+ *
+ * Immutable once built.
+ */
+public class DistractorIndex {
+    private static final int HASHES = 32;
+    private static final int BANDS = 8;
+    private static final int ROWS = HASHES / BANDS;
+    // Similar answers kept per answer
+    static final int SHORTLIST = 8;
+    // Candidates looked at per band, so a huge bucket of near-identical answers stays cheap
+    private static final int MAX_BUCKET_SCAN = 32;
+    // Up to this many answers every pair is compared, since banding misses weakly similar pairs
+    private static final int EXACT_THRESHOLD = 1024;
+    // Below this many answers the fork-join overhead is not worth it
+    private static final int PARALLEL_THRESHOLD = 2048;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private final int[] shortlists;
+    private final int[] shortlistSizes;
+
+    public DistractorIndex(String[] answers) {
+        int count = answers.length;
+        int[] signatures = new int[count * HASHES];
+        range(count).forEach(a -> sign(answers[a], signatures, a * HASHES));
+
+        // Per band, each answer's band hash packed above its index and sorted, so
+        // answers that share a band end up next to each other
+        long[][] buckets = new long[BANDS][count];
+        int[][] positions = new int[BANDS][count];
+        range(BANDS).forEach(band -> {
+            long[] sorted = buckets[band];
+            for (int a = 0; a < count; a++) {
+                sorted[a] = ((long) bandHash(signatures, a, band) << 32) | a;
+            }
+            Arrays.sort(sorted);
+            for (int i = 0; i < count; i++) {
+                positions[band][(int) sorted[i]] = i;
+            }
+        });
+
+        shortlists = new int[count * SHORTLIST];
+        shortlistSizes = new int[count];
+        range(count).forEach(a -> buildShortlist(a, signatures, buckets, positions));
+    }
+
+    public int getShortlistSize(int answer) {
+        return shortlistSizes[answer];
+    }
+
+    /**
+     * Returns the {@code rank}-th most similar answer to {@code answer}.
+     */
+    public int getShortlisted(int answer, int rank) {
+        return shortlists[answer * SHORTLIST + rank];
+    }
+
+    private static IntStream range(int count) {
+        IntStream stream = IntStream.range(0, count);
+        return count >= PARALLEL_THRESHOLD ? stream.parallel() : stream;
+    }
+
+    // MinHash over lower-cased character trigrams, or the whole text if it is shorter
+    private static void sign(String text, int[] signatures, int offset) {
+        Arrays.fill(signatures, offset, offset + HASHES, Integer.MAX_VALUE);
+        int length = text.length();
+        int shingles = Math.max(1, length - 2);
+        for (int i = 0; i < shingles; i++) {
+            long shingle = 0;
+            for (int j = i; j < Math.min(i + 3, length); j++) {
+                shingle = (shingle << 16) | Character.toLowerCase(text.charAt(j));
+            }
+            // HASHES hash functions from two base hashes (Kirsch-Mitzenmacher)
+            long h1 = mix(shingle);
+            long h2 = mix(shingle ^ GOLDEN) | 1;
+            for (int k = 0; k < HASHES; k++) {
+                int hash = (int) ((h1 + k * h2) >>> 33);
+                if (hash < signatures[offset + k]) {
+                    signatures[offset + k] = hash;
+                }
+            }
+        }
+    }
+
+    private static int bandHash(int[] signatures, int answer, int band) {
+        long hash = band;
+        int start = answer * HASHES + band * ROWS;
+        for (int r = 0; r < ROWS; r++) {
+            hash = hash * GOLDEN + signatures[start + r];
+        }
+        return (int) (mix(hash) >>> 32);
+    }
+
+    private void buildShortlist(int answer, int[] signatures, long[][] buckets, int[][] positions) {
+        int[] scores = new int[SHORTLIST];
+        int size = 0;
+        if (shortlistSizes.length <= EXACT_THRESHOLD) {
+            for (int candidate = 0; candidate < shortlistSizes.length; candidate++) {
+                size = offer(answer, candidate, signatures, scores, size);
+            }
+        } else {
+            for (int band = 0; band < BANDS; band++) {
+                long[] sorted = buckets[band];
+                int key = (int) (sorted[positions[band][answer]] >>> 32);
+                int start = positions[band][answer] - MAX_BUCKET_SCAN / 2;
+                for (int i = Math.max(0, start); i < Math.min(sorted.length, start + MAX_BUCKET_SCAN + 1); i++) {
+                    if ((int) (sorted[i] >>> 32) == key) {
+                        size = offer(answer, (int) sorted[i], signatures, scores, size);
+                    }
+                }
+            }
+        }
+        shortlistSizes[answer] = size;
+    }
+
+    // Keeps the SHORTLIST best-scoring candidates, best first, by insertion into a small array
+    private int offer(int answer, int candidate, int[] signatures, int[] scores, int size) {
+        int base = answer * SHORTLIST;
+        if (candidate == answer || contains(base, size, candidate)) {
+            return size;
+        }
+        int score = similarity(signatures, answer, candidate);
+        if (score == 0 || size == SHORTLIST && score <= scores[SHORTLIST - 1]) {
+            return size;
+        }
+        int slot = size < SHORTLIST ? size++ : SHORTLIST - 1;
+        while (slot > 0 && scores[slot - 1] < score) {
+            scores[slot] = scores[slot - 1];
+            shortlists[base + slot] = shortlists[base + slot - 1];
+            slot--;
+        }
+        scores[slot] = score;
+        shortlists[base + slot] = candidate;
+        return size;
+    }
+
+    private boolean contains(int base, int size, int candidate) {
+        for (int i = 0; i < size; i++) {
+            if (shortlists[base + i] == candidate) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Matching signature slots, out of HASHES; proportional to the estimated Jaccard similarity
+    private static int similarity(int[] signatures, int a, int b) {
+        int matches = 0;
+        for (int k = 0; k < HASHES; k++) {
+            if (signatures[a * HASHES + k] == signatures[b * HASHES + k]) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    // The SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
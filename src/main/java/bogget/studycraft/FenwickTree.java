@@ -0,0 +1,73 @@
+package bogget.studycraft;
+
+/**
+ * A Fenwick (binary indexed) tree over non-negative {@code long} weights, for
+ * weighted random picks. Changing one weight and finding the item a random point
+ * in the total weight falls on are both O(log n). Integer weights keep the prefix
+ * sums exact however many updates are applied.
+ */
+public class FenwickTree {
+    // 1-based: tree[i] holds the sum of the (i & -i) weights ending at item i - 1
+    private final long[] tree;
+    private final long[] weights;
+
+    /**
+     * Builds the tree over a copy of {@code initialWeights} in O(n).
+     */
+    public FenwickTree(long[] initialWeights) {
+        this.weights = initialWeights.clone();
+        this.tree = new long[weights.length + 1];
+        for (int i = 1; i <= weights.length; i++) {
+            tree[i] += weights[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= weights.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    public int size() {
+        return weights.length;
+    }
+
+    public long get(int index) {
+        return weights[index];
+    }
+
+    public void set(int index, long weight) {
+        long delta = weight - weights[index];
+        if (delta == 0) {
+            return;
+        }
+        weights[index] = weight;
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    public long total() {
+        long sum = 0;
+        for (int i = weights.length; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the item whose share of the total covers {@code target}, that is the
+     * smallest index whose prefix sum exceeds it. {@code target} must be in
+     * [0, total()).
+     */
+    public int find(long target) {
+        int position = 0;
+        for (int step = Integer.highestOneBit(weights.length); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < tree.length && tree[next] <= target) {
+                position = next;
+                target -= tree[next];
+            }
+        }
+        // position is the count of items whose prefix sum is <= target
+        return position;
+    }
+}
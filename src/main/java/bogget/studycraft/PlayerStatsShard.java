@@ -0,0 +1,420 @@
+package bogget.studycraft;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * One player's quiz statistics, stored as a compressed NBT file {@code <uuid>.dat}
+ * in the stats directory (see {@link StatsNbt} for its layout).
+ *
+ * In memory the stats are one packed {@code long} per question, indexed by the
+ * question's id in the server's {@link QuestionIndex}: the high 32 bits count
+ * correct answers and the low 32 bits wrong ones. The last few attempts at each
+ * question are kept alongside in an {@link AnswerHistory}, and the player's
+ * spaced-repetition state in a {@link ReviewScheduler}.
+ *
+ * A shard is created empty when the player joins and filled in by {@link #load()}
+ * on the stats I/O thread. Answers recorded before loading finishes are kept and
+ * merged with the loaded history. The shard is only written when the world saves.
+ *
+ * Each shard has its own lock, so players never contend with each other. Answers
+ * take the write lock for a few array updates; readers on other threads take a
+ * {@link #snapshot()}, and the overall percentage is read optimistically without
+ * locking at all.
+ *
+ * Snapshots are copy-on-write: taking one only hands out the current arrays and
+ * marks them shared, and the next answer copies what it is about to change. So a
+ * snapshot costs a few pointer swaps under the lock however large the stats are,
+ * and serializing it can take as long as it needs on another thread.
+ */
+public class PlayerStatsShard {
+    private static final Logger LOGGER = Studycraft.LOGGER;
+    private static final long CORRECT_ONE = 1L << 32;
+
+    private final UUID playerId;
+    private final File dataFile;
+    private final File legacyStatsFile;
+    private final QuestionIndex index;
+    private final StampedLock lock = new StampedLock();
+
+    // Guarded by lock: packed counts by question id, grown on demand
+    private long[] counts = new long[0];
+    // Guarded by lock: counts is referenced by a snapshot and must be copied before writing
+    private boolean countsShared = false;
+    // Guarded by lock: bumped on every change, so snapshots can be ordered
+    private long version = 0;
+    // Guarded by lock: the version each question's counts last changed at, and
+    // the version they first became non-zero at, for syncing clients by delta
+    private long[] changedVersions = new long[0];
+    private long[] createdVersions = new long[0];
+    // Names this shard's run of versions; a client holding stats from another epoch starts over
+    private final long epoch = ThreadLocalRandom.current().nextLong() | 1;
+    // Guarded by lock: sums over counts, kept up to date on every change
+    private long totalCorrect = 0;
+    private long totalWrong = 0;
+    // Guarded by lock
+    private final AnswerHistory history = new AnswerHistory();
+    // Guarded by lock
+    private final ReviewScheduler schedule = new ReviewScheduler();
+    // Guarded by lock: built on the first adaptive pick, and again when the bank changes
+    private AdaptiveSelector selector;
+
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private volatile boolean loaded = false;
+
+    public PlayerStatsShard(UUID playerId, File statsDir, QuestionIndex index) {
+        this.playerId = playerId;
+        this.index = index;
+        this.dataFile = new File(statsDir, playerId + ".dat");
+        this.legacyStatsFile = new File(statsDir, playerId + ".stats");
+    }
+
+    /**
+     * Reads the player's file and merges it with any answers recorded while
+     * loading. I/O thread only.
+     *
+     * A file that cannot be read is moved aside to {@code <name>.corrupt} before
+     * anything else is saved, so the answers given from now on do not overwrite
+     * it. If even that fails the shard stays unloaded and is never saved.
+     */
+    public void load() {
+        long[] loadedCounts = new long[0];
+        AnswerHistory loadedHistory = new AnswerHistory();
+        ReviewScheduler loadedSchedule = new ReviewScheduler();
+        boolean converted = false;
+
+        File source = dataFile.exists() ? dataFile : legacyStatsFile;
+        try {
+            if (source == dataFile) {
+                NbtCompound nbt = NbtIo.readCompressed(dataFile);
+                if (nbt.contains("Stats", NbtElement.BYTE_ARRAY_TYPE)) {
+                    // Written by earlier builds, which wrapped StatsCodec bytes in the NBT
+                    loadedCounts = StatsCodec.decode(nbt.getByteArray("Stats"), index, loadedHistory, loadedSchedule);
+                    converted = true;
+                } else {
+                    loadedCounts = StatsNbt.read(nbt, index, loadedHistory, loadedSchedule);
+                }
+            } else if (legacyStatsFile.exists()) {
+                // Uncompressed file from before stats were saved with the world
+                loadedCounts = StatsCodec.decode(Files.readAllBytes(legacyStatsFile.toPath()), index, loadedHistory, loadedSchedule);
+                converted = true;
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to load quiz statistics for {}", playerId, e);
+            File corruptFile = new File(source.getPath() + ".corrupt");
+            try {
+                Files.move(source.toPath(), corruptFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                LOGGER.warn("Moved unreadable quiz statistics to {}; {} starts with empty stats", corruptFile, playerId);
+            } catch (IOException moveError) {
+                LOGGER.error("Failed to move aside {}; quiz statistics for {} will not be saved", source, playerId, moveError);
+                return;
+            }
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            prepareCounts(loadedCounts.length);
+            version++;
+            for (int id = 0; id < loadedCounts.length; id++) {
+                if (loadedCounts[id] != 0) {
+                    markChanged(id, counts[id] == 0);
+                }
+                counts[id] += loadedCounts[id];
+                totalCorrect += correctOf(loadedCounts[id]);
+                totalWrong += wrongOf(loadedCounts[id]);
+            }
+            history.mergeOlder(loadedHistory);
+            schedule.mergeOlder(loadedSchedule);
+            // Weights built before loading only knew the answers given since joining
+            selector = null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        // Converted files are rewritten as structured NBT on the next world save
+        if (converted) {
+            dirty.set(true);
+        }
+        loaded = true;
+    }
+
+    /**
+     * Records an answer in memory. Safe from any thread.
+     *
+     * @param latencyMs How long the player took to answer, in milliseconds
+     */
+    public void record(int questionId, boolean correct, int latencyMs) {
+        long now = System.currentTimeMillis();
+        long attempt = AnswerHistory.pack(now, latencyMs, correct);
+        long stamp = lock.writeLock();
+        try {
+            history.record(questionId, attempt);
+            schedule.review(questionId, correct, latencyMs, now / 1000);
+            prepareCounts(questionId + 1);
+            version++;
+            markChanged(questionId, counts[questionId] == 0);
+            if (correct) {
+                counts[questionId] += CORRECT_ONE;
+                totalCorrect++;
+            } else {
+                counts[questionId] += 1;
+                totalWrong++;
+            }
+            if (selector != null) {
+                selector.update(questionId, counts, history, now);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        dirty.set(true);
+    }
+
+    // Makes counts writable and at least capacity long. Write lock held.
+    private void prepareCounts(int capacity) {
+        if (counts.length < capacity) {
+            // Grow at least to the current bank size so new ids rarely reallocate
+            counts = Arrays.copyOf(counts, Math.max(capacity, Math.max(index.size(), counts.length * 2)));
+            countsShared = false;
+        } else if (countsShared) {
+            counts = counts.clone();
+            countsShared = false;
+        }
+    }
+
+    // Stamps a question with the current version. Write lock held.
+    private void markChanged(int questionId, boolean created) {
+        if (changedVersions.length <= questionId) {
+            int capacity = Math.max(questionId + 1, counts.length);
+            changedVersions = Arrays.copyOf(changedVersions, capacity);
+            createdVersions = Arrays.copyOf(createdVersions, capacity);
+        }
+        changedVersions[questionId] = version;
+        if (created) {
+            createdVersions[questionId] = version;
+        }
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the stats that changed after {@code sinceVersion}, for a client
+     * that holds them as of that version of this epoch. A client from another
+     * epoch, or from the future, gets everything.
+     */
+    public StatsDelta delta(long clientEpoch, long sinceVersion) {
+        long stamp = lock.readLock();
+        try {
+            boolean full = clientEpoch != epoch || sinceVersion > version;
+            int size = 0;
+            int[] questionIds = new int[changedVersions.length];
+            for (int id = 0; id < changedVersions.length; id++) {
+                if (counts[id] != 0 && (full || changedVersions[id] > sinceVersion)) {
+                    questionIds[size++] = id;
+                }
+            }
+
+            questionIds = Arrays.copyOf(questionIds, size);
+            String[] texts = new String[size];
+            long[] deltaCounts = new long[size];
+            long[][] attempts = new long[size][];
+            for (int i = 0; i < size; i++) {
+                int id = questionIds[i];
+                // The client has the text of every question it already had stats for
+                texts[i] = full || createdVersions[id] > sinceVersion ? index.textOf(id) : null;
+                deltaCounts[i] = counts[id];
+                attempts[i] = history.getAttempts(id);
+            }
+            return new StatsDelta(epoch, version, full, questionIds, texts, deltaCounts, attempts);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Draws a bank index for the player's next question, weighted by their error
+     * rate and how long ago they last saw each question. Returns -1 if the bank is
+     * empty.
+     */
+    public int pickQuestion(QuestionBank bank, Random random) {
+        long now = System.currentTimeMillis();
+        long stamp = lock.writeLock();
+        try {
+            if (selector == null || !selector.isFor(bank)) {
+                selector = new AdaptiveSelector(bank, index, counts, history, now);
+            }
+            return selector.pick(random, counts, history, now);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the bank index of the player's next spaced-repetition card (see
+     * {@link ReviewScheduler#next}), or -1 if the bank is empty.
+     */
+    public int nextDueQuestion(QuestionBank bank) {
+        long now = System.currentTimeMillis() / 1000;
+        long stamp = lock.writeLock();
+        try {
+            return schedule.next(bank, index, now);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    static long pack(int correct, int wrong) {
+        return ((long) correct << 32) | (wrong & 0xFFFFFFFFL);
+    }
+
+    static int correctOf(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    static int wrongOf(long packed) {
+        return (int) packed;
+    }
+
+    /**
+     * Freezes the current stats in constant time. The snapshot is never changed
+     * by later answers.
+     */
+    public PlayerStatsSnapshot snapshot() {
+        long stamp = lock.writeLock();
+        try {
+            return freeze();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Write lock held
+    private PlayerStatsSnapshot freeze() {
+        countsShared = true;
+        return new PlayerStatsSnapshot(playerId, index, counts, history.freeze(), schedule.freeze(),
+            totalCorrect, totalWrong, version);
+    }
+
+    /**
+     * Snapshots the stats for saving if they changed since the last save, or
+     * returns null. A shard that is still loading is never saved, since that would
+     * overwrite the player's history with only the answers given since they joined.
+     */
+    public PlayerStatsSnapshot takeSnapshot() {
+        if (!loaded) {
+            return null;
+        }
+        long stamp = lock.writeLock();
+        try {
+            // Answers need the write lock, so none can slip in between the flag and the freeze
+            if (!dirty.compareAndSet(true, false)) {
+                return null;
+            }
+            return freeze();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void markDirty() {
+        dirty.set(true);
+    }
+
+    public boolean isDirty() {
+        return dirty.get();
+    }
+
+    /**
+     * Writes a snapshot from {@link #takeSnapshot()} as compressed NBT. I/O thread only.
+     */
+    public void write(PlayerStatsSnapshot snapshot) throws IOException {
+        write(snapshot.toNbt());
+    }
+
+    /**
+     * Writes {@link StatsNbt} data as compressed NBT. I/O thread only.
+     */
+    public void write(NbtCompound nbt) throws IOException {
+        File tempFile = new File(dataFile.getPath() + ".tmp");
+        NbtIo.writeCompressed(nbt, tempFile);
+        Files.move(tempFile.toPath(), dataFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // The .dat file replaces the uncompressed snapshot and its answer journal
+        Files.deleteIfExists(legacyStatsFile.toPath());
+        Files.deleteIfExists(new File(dataFile.getParentFile(), playerId + ".journal").toPath());
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public Map<String, QuizStatistics.StatsEntry> getStats() {
+        return snapshot().getStats();
+    }
+
+    public QuizStatistics.StatsEntry getQuestionStats(String question) {
+        int questionId = index.find(question);
+        long stamp = lock.readLock();
+        try {
+            long packed = questionId >= 0 && questionId < counts.length ? counts[questionId] : 0;
+            return QuizStatistics.StatsEntry.of(packed, history.getAttempts(questionId));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public float getOverallPercentCorrect() {
+        // Two longs change together, so read them optimistically and retry under the lock on a race
+        long stamp = lock.tryOptimisticRead();
+        long correct = totalCorrect;
+        long wrong = totalWrong;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                correct = totalCorrect;
+                wrong = totalWrong;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (Studycraft.DEBUG_STATS) {
+            checkTotals();
+        }
+        long totalAnswers = correct + wrong;
+        return totalAnswers > 0 ? (float) correct / totalAnswers * 100f : 0;
+    }
+
+    // Debug only: recomputes the totals from the counts and logs any drift
+    private void checkTotals() {
+        long stamp = lock.readLock();
+        try {
+            long sumCorrect = 0;
+            long sumWrong = 0;
+            for (long packed : counts) {
+                sumCorrect += correctOf(packed);
+                sumWrong += wrongOf(packed);
+            }
+            if (sumCorrect != totalCorrect || sumWrong != totalWrong) {
+                LOGGER.warn("Quiz statistics totals for {} drifted: running {}/{}, recomputed {}/{}",
+                    playerId, totalCorrect, totalWrong, sumCorrect, sumWrong);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package bogget.studycraft;
+
+import net.minecraft.nbt.NbtCompound;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An immutable, consistent view of one player's quiz statistics at one point in
+ * time. Taken under the shard's lock in a single step, so the counts, totals and
+ * history always agree with each other. The arrays are shared with the shard
+ * until it next changes them (see {@link PlayerStatsShard}), so taking one is
+ * cheap and reading it from any thread never holds up the server thread.
+ */
+public final class PlayerStatsSnapshot {
+    private final UUID playerId;
+    private final QuestionIndex index;
+    private final long[] counts;
+    private final AnswerHistory history;
+    private final ReviewScheduler schedule;
+    private final long totalCorrect;
+    private final long totalWrong;
+    private final long version;
+
+    PlayerStatsSnapshot(UUID playerId, QuestionIndex index, long[] counts, AnswerHistory history,
+                        ReviewScheduler schedule, long totalCorrect, long totalWrong, long version) {
+        this.playerId = playerId;
+        this.index = index;
+        this.counts = counts;
+        this.history = history;
+        this.schedule = schedule;
+        this.totalCorrect = totalCorrect;
+        this.totalWrong = totalWrong;
+        this.version = version;
+    }
+
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * Increases with every change to the player's stats. Two snapshots of the same
+     * player with the same version hold the same data.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public long getTotalCorrect() {
+        return totalCorrect;
+    }
+
+    public long getTotalAnswers() {
+        return totalCorrect + totalWrong;
+    }
+
+    public float getOverallPercentCorrect() {
+        long totalAnswers = getTotalAnswers();
+        return totalAnswers > 0 ? (float) totalCorrect / totalAnswers * 100f : 0;
+    }
+
+    public QuizStatistics.StatsEntry getQuestionStats(String question) {
+        return entryFor(index.find(question));
+    }
+
+    /**
+     * Builds a question text -> StatsEntry map of every answered question.
+     */
+    public Map<String, QuizStatistics.StatsEntry> getStats() {
+        Map<String, QuizStatistics.StatsEntry> result = new HashMap<>();
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] != 0) {
+                result.put(index.textOf(id), entryFor(id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds the snapshot's NBT for saving (see {@link StatsNbt}).
+     */
+    public NbtCompound toNbt() {
+        return StatsNbt.write(counts, history, schedule, index);
+    }
+
+    private QuizStatistics.StatsEntry entryFor(int questionId) {
+        long packed = questionId >= 0 && questionId < counts.length ? counts[questionId] : 0;
+        return QuizStatistics.StatsEntry.of(packed, history.getAttempts(questionId));
+    }
+}
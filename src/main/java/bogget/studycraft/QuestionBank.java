@@ -1,96 +1,221 @@
 package bogget.studycraft;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * An immutable, compiled question deck. Question and answer text is pooled so
+ * each distinct string is stored once, and questions are kept as parallel int
+ * arrays rather than an object per row. Safe to share between threads.
+ */
 public class QuestionBank {
-    // Store this as a constant that can be easily replaced by users
-    public static String RAW_QUESTION_BANK = """
-Lithium	Crimson flame
-Sodium	Yellow flame
-Potassium	Lilac flame
-Calcium	Orange-red flame
-Forms a white precipitate in sodium hydroxide
-Copper	Green flame
-Aluminium	Forms a white precipitate in sodium hydroxide
-Aluminium hydroxide dissolves in excess sodium hydroxide
-Copper (II)	Forms a blue precipitate in sodium hydroxide
-Iron (II)	Forms a green precipitate in sodium hydroxide
-Iron (III)	Forms a brown precipitate in sodium hydroxide
-Carbonates	Dissolves in a dilute acid to produce carbon dioxide which can be tested with lime water
-Bromide	Produces a cream precipitate with silver nitrate in the presence of dilute nitric acid
-Chloride	Produces a white precipitate with silver nitrate in the presence of dilute nitric acid
-Iodide	Produces a yellow precipitate with silver nitrate in the presence of dilute nitric acid
-Sulfate	Produce a white precipitate with barium chloride in the presence of dilute hydrochloric acid
-            """;
-    
-    private static class QuizQuestion {
-        private final String question;
-        private final String correctAnswer;
+    private static final int WRONG_ANSWERS = 3;
+    
+    // Every distinct question and answer text, stored once
+    private final String[] strings;
+    // Per question: its text and its answer, as indices into strings and answerTexts
+    private final int[] questionTexts;
+    private final int[] questionAnswers;
+    // Per distinct answer: its text, and the questions it answers
+    // (answerQuestions[answerStarts[a] .. answerStarts[a + 1]])
+    private final int[] answerTexts;
+    private final int[] answerStarts;
+    private final int[] answerQuestions;
+    // Similar-looking answers for each answer, to draw plausible wrong options from
+    private final DistractorIndex distractors;
+    private final String parseErrors;
+    // Built on first use, since only typed answers need it
+    private volatile AnswerMatcher answerMatcher;
+    // Built on first use, when the first client needs the deck's hash
+    private volatile DeckSnapshot snapshot;
+    // The questions' ids in the server's QuestionIndex, made when the bank is registered
+    private volatile QuestionIds questionIds;
+    
+    public QuestionBank(String content) {
+        this(QuestionBankParser.parse(content));
+    }
+    
+    /**
+     * Compiles parsed lines into the deck's flat arrays. Equal strings are pooled,
+     * so repeated answers, which are common in exports, are kept once.
+     */
+    private QuestionBank(QuestionBankParser.Result result) {
+        int size = result.size();
+        Map<String, Integer> pool = new HashMap<>();
+        List<String> pooled = new ArrayList<>();
+        // Answer id of each pooled string, or -1; there are at most two strings per question
+        int[] answerIds = new int[size * 2];
+        Arrays.fill(answerIds, -1);
+        int[] answerTextList = new int[size];
+        int answerCount = 0;
+        questionTexts = new int[size];
+        questionAnswers = new int[size];
         
-        public QuizQuestion(String question, String correctAnswer) {
-            this.question = question;
-            this.correctAnswer = correctAnswer;
+        for (int i = 0; i < size; i++) {
+            questionTexts[i] = intern(result.getQuestion(i), pool, pooled);
+            int answerText = intern(result.getAnswer(i), pool, pooled);
+            if (answerIds[answerText] < 0) {
+                answerIds[answerText] = answerCount;
+                answerTextList[answerCount++] = answerText;
+            }
+            questionAnswers[i] = answerIds[answerText];
         }
+        strings = pooled.toArray(new String[0]);
+        answerTexts = Arrays.copyOf(answerTextList, answerCount);
         
-        public String getQuestion() {
-            return question;
+        // Group the questions by answer with a counting sort
+        answerStarts = new int[answerTexts.length + 1];
+        for (int answer : questionAnswers) {
+            answerStarts[answer + 1]++;
+        }
+        for (int a = 0; a < answerTexts.length; a++) {
+            answerStarts[a + 1] += answerStarts[a];
+        }
+        answerQuestions = new int[size];
+        int[] next = Arrays.copyOf(answerStarts, answerTexts.length);
+        for (int i = 0; i < size; i++) {
+            answerQuestions[next[questionAnswers[i]]++] = i;
         }
         
-        public String getCorrectAnswer() {
-            return correctAnswer;
+        String[] answerStrings = new String[answerTexts.length];
+        for (int a = 0; a < answerTexts.length; a++) {
+            answerStrings[a] = strings[answerTexts[a]];
+        }
+        distractors = new DistractorIndex(answerStrings);
+        
+        // One summary for all bad lines instead of a warning each
+        parseErrors = result.getErrorSummary();
+        if (parseErrors != null) {
+            Studycraft.LOGGER.warn("Skipped invalid question bank lines: {}", parseErrors);
+        }
+        Studycraft.LOGGER.info("Loaded {} questions from question bank", size);
+    }
+    
+    /**
+     * Builds a deck from already parsed lines.
+     */
+    public static QuestionBank ofDeck(QuestionBankParser.Result result) {
+        return new QuestionBank(result);
+    }
+    
+    private static int intern(String text, Map<String, Integer> pool, List<String> pooled) {
+        Integer id = pool.get(text);
+        if (id == null) {
+            id = pooled.size();
+            pool.put(text, id);
+            pooled.add(text);
         }
+        return id;
     }
     
-    private final List<QuizQuestion> questions = new ArrayList<>();
-    private final Random random = new Random();
+    /**
+     * Returns a summary of the lines that could not be parsed, or null if there
+     * were none.
+     */
+    public String getParseErrors() {
+        return parseErrors;
+    }
     
-    public QuestionBank() {
-        parseQuestionBank(RAW_QUESTION_BANK);
+    public int getQuestionCount() {
+        return questionTexts.length;
     }
-
-    public QuestionBank(String content) {
-        parseQuestionBank(content);
-        // Update the static field so it persists
-        RAW_QUESTION_BANK = content;
+    
+    public String getQuestionText(int index) {
+        return strings[questionTexts[index]];
     }
     
-    private void parseQuestionBank(String content) {
-        // Clear existing questions
-        questions.clear();
-        // Split the raw question bank by newlines
-        String[] lines = content.split("\n");
-        
-        // Process each line
-        for (String line : lines) {
-            // Split by tab character
-            String[] parts = line.split("\t", 2);
-            
-            // Skip if we don't have exactly two parts
-            if (parts.length != 2) {
-                Studycraft.LOGGER.warn("Skipping invalid question bank line: " + line);
-                continue;
+    public String getAnswerText(int index) {
+        return strings[answerTexts[questionAnswers[index]]];
+    }
+    
+    /**
+     * Returns the number of distinct answers; answer ids run from 0 to this.
+     */
+    public int getAnswerCount() {
+        return answerTexts.length;
+    }
+    
+    public String getAnswerById(int answerId) {
+        return strings[answerTexts[answerId]];
+    }
+    
+    public int getAnswerId(int questionIndex) {
+        return questionAnswers[questionIndex];
+    }
+    
+    /**
+     * Returns the indices of every question with the given answer.
+     */
+    public int[] getQuestionsWithAnswer(int answerId) {
+        return Arrays.copyOfRange(answerQuestions, answerStarts[answerId], answerStarts[answerId + 1]);
+    }
+    
+    /**
+     * Returns the matcher for grading typed answers against this bank, building
+     * it the first time. Building is slow for big decks, so call this off the
+     * server thread.
+     */
+    public AnswerMatcher getAnswerMatcher() {
+        AnswerMatcher matcher = answerMatcher;
+        if (matcher == null) {
+            synchronized (this) {
+                matcher = answerMatcher;
+                if (matcher == null) {
+                    matcher = new AnswerMatcher(this);
+                    answerMatcher = matcher;
+                }
             }
-            
-            // Extract question and answer
-            String question = parts[0].trim();
-            String answer = parts[1].trim();
-            
-            // Add to our list
-            questions.add(new QuizQuestion(question, answer));
         }
-        
-        Studycraft.LOGGER.info("Loaded {} questions from question bank", questions.size());
+        return matcher;
     }
     
-    public int getQuestionCount() {
-        return questions.size();
+    /**
+     * Returns the snapshot clients cache this bank under, building it the first
+     * time. Call this off the server thread.
+     */
+    public DeckSnapshot getSnapshot() {
+        DeckSnapshot built = snapshot;
+        if (built == null) {
+            synchronized (this) {
+                built = snapshot;
+                if (built == null) {
+                    built = DeckSnapshot.of(this);
+                    snapshot = built;
+                }
+            }
+        }
+        return built;
+    }
+    
+    /**
+     * Returns the ids of this bank's questions in {@code index}, registering them
+     * the first time. Every player's adaptive and spaced-repetition picker shares
+     * this mapping instead of looking each question up again. Building it is O(n),
+     * so banks are registered off the server thread (see
+     * {@link QuizStatistics#registerQuestions}).
+     */
+    public QuestionIds getQuestionIds(QuestionIndex index) {
+        QuestionIds ids = questionIds;
+        if (ids == null || ids.index != index) {
+            synchronized (this) {
+                ids = questionIds;
+                // A new server in the same game has a new index
+                if (ids == null || ids.index != index) {
+                    ids = new QuestionIds(index, index.registerAll(this));
+                    questionIds = ids;
+                }
+            }
+        }
+        return ids;
     }
     
     public QuizData getRandomQuestion() {
-        if (questions.isEmpty()) {
+        if (questionTexts.length == 0) {
             // Fallback question if none loaded
             return new QuizData(
                 "No questions loaded. Check your question bank format.",
@@ -100,42 +225,134 @@ Sulfate	Produce a white precipitate with barium chloride in the presence of dilu
             );
         }
         
-        // Get a random question
-        QuizQuestion question = questions.get(random.nextInt(questions.size()));
+        return getQuestion(ThreadLocalRandom.current().nextInt(questionTexts.length));
+    }
+    
+    /**
+     * Builds a quiz card for the question at {@code questionIndex}. Wrong answers
+     * come from the answers most similar to the correct one where there are any,
+     * then from the rest of the bank. They are always distinct answers, so no
+     * option repeats another or the correct answer.
+     */
+    public QuizData getQuestion(int questionIndex) {
+        Random random = ThreadLocalRandom.current();
+        int answer = questionAnswers[questionIndex];
+        String correctAnswer = strings[answerTexts[answer]];
         
-        // Generate wrong answers (use 3 other random answers)
-        List<String> wrongAnswers = new ArrayList<>();
-        List<Integer> usedIndices = new ArrayList<>();
-        usedIndices.add(questions.indexOf(question)); // Don't use the correct answer
+        // Draw up to 3 distinct wrong answers, similar ones first
+        int wrongCount = Math.min(WRONG_ANSWERS, answerTexts.length - 1);
+        int[] wrongAnswers = new int[wrongCount];
+        int similar = Math.min(wrongCount, distractors.getShortlistSize(answer));
+        sampleDistinct(random, distractors.getShortlistSize(answer), wrongAnswers, 0, similar);
+        for (int i = 0; i < similar; i++) {
+            wrongAnswers[i] = distractors.getShortlisted(answer, wrongAnswers[i]);
+        }
+        if (similar < wrongCount) {
+            // Top up from the rest of the bank: sample positions among the answers that
+            // are neither correct nor taken, then step each past the excluded ids below it
+            int[] excluded = Arrays.copyOf(wrongAnswers, similar + 1);
+            excluded[similar] = answer;
+            Arrays.sort(excluded);
+            sampleDistinct(random, answerTexts.length - excluded.length, wrongAnswers, similar, wrongCount);
+            for (int i = similar; i < wrongCount; i++) {
+                for (int id : excluded) {
+                    if (wrongAnswers[i] >= id) {
+                        wrongAnswers[i]++;
+                    }
+                }
+            }
+        }
         
-        // Try to get 3 wrong answers
-        for (int i = 0; i < 3 && i < questions.size() - 1; i++) {
-            int index;
-            do {
-                index = random.nextInt(questions.size());
-            } while (usedIndices.contains(index));
+        // Deal the correct answer and the wrong ones into shuffled slots (inside-out
+        // Fisher-Yates), keeping track of where the correct answer lands
+        int[] slotIds = new int[WRONG_ANSWERS + 1];
+        int correctIndex = 0;
+        slotIds[0] = answer;
+        for (int i = 1; i < slotIds.length; i++) {
+            // If we don't have enough questions, the slot gets a default wrong answer
+            int wrongAnswer = i <= wrongCount ? wrongAnswers[i - 1] : -1;
             
-            usedIndices.add(index);
-            wrongAnswers.add(questions.get(index).getCorrectAnswer());
+            int swap = random.nextInt(i + 1);
+            slotIds[i] = slotIds[swap];
+            slotIds[swap] = wrongAnswer;
+            if (swap == correctIndex) {
+                correctIndex = i;
+            }
         }
         
-        // If we don't have enough questions, add some default wrong answers
-        while (wrongAnswers.size() < 3) {
-            wrongAnswers.add("Option " + (wrongAnswers.size() + 1));
+        String[] slots = new String[slotIds.length];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = slotIds[i] >= 0 ? strings[answerTexts[slotIds[i]]] : defaultOption(i);
+        }
+        return new QuizData(getQuestionText(questionIndex), correctAnswer, Arrays.asList(slots), correctIndex, questionIndex, slotIds);
+    }
+    
+    /**
+     * The wrong answer shown in a slot when the deck has too few answers to fill it.
+     * Numbered from 1, like the placeholders before decks were compiled.
+     */
+    public static String defaultOption(int slot) {
+        return "Option " + (slot + 1);
+    }
+    
+    /**
+     * Fills {@code out[from .. to)} with distinct random ints from [0, bound) using
+     * Floyd's algorithm: one draw per element and no rejection loop, however small
+     * the range. The sample is a uniformly random set, not in random order.
+     */
+    private static void sampleDistinct(Random random, int bound, int[] out, int from, int to) {
+        int count = from;
+        for (int j = bound - (to - from); j < bound; j++) {
+            int candidate = random.nextInt(j + 1);
+            for (int i = from; i < count; i++) {
+                if (out[i] == candidate) {
+                    // Already taken; j itself cannot have been drawn yet
+                    candidate = j;
+                    break;
+                }
+            }
+            out[count++] = candidate;
         }
+    }
+    
+    /**
+     * Maps a bank's question indices to their ids in one {@link QuestionIndex}
+     * and back. Immutable.
+     */
+    public static class QuestionIds {
+        private final QuestionIndex index;
+        private final int[] ids;
+        // Bank index by question id, or -1; a question listed twice maps to its last index
+        private final int[] bankIndices;
         
-        // Combine correct and wrong answers
-        List<String> allAnswers = new ArrayList<>();
-        allAnswers.add(question.getCorrectAnswer());
-        allAnswers.addAll(wrongAnswers);
+        QuestionIds(QuestionIndex index, int[] ids) {
+            this.index = index;
+            this.ids = ids;
+            int maxId = -1;
+            for (int id : ids) {
+                maxId = Math.max(maxId, id);
+            }
+            bankIndices = new int[maxId + 1];
+            Arrays.fill(bankIndices, -1);
+            for (int i = 0; i < ids.length; i++) {
+                bankIndices[ids[i]] = i;
+            }
+        }
         
-        // Shuffle the answers
-        Collections.shuffle(allAnswers);
+        public int size() {
+            return ids.length;
+        }
         
-        // Find where the correct answer ended up
-        int correctIndex = allAnswers.indexOf(question.getCorrectAnswer());
+        public int idAt(int bankIndex) {
+            return ids[bankIndex];
+        }
         
-        return new QuizData(question.getQuestion(), question.getCorrectAnswer(), allAnswers, correctIndex);
+        /**
+         * Returns the bank index of a question id, or -1 if the question is not in the bank.
+         */
+        public int bankIndexOf(int questionId) {
+            return questionId >= 0 && questionId < bankIndices.length ? bankIndices[questionId] : -1;
+        }
     }
     
     public static class QuizData {
@@ -143,12 +360,22 @@ Sulfate	Produce a white precipitate with barium chloride in the presence of dilu
         private final String correctAnswer;
         private final List<String> allAnswers;
         private final int correctIndex;
+        // Where the card came from in its bank, or -1 and null for cards made up on the spot
+        private final int questionIndex;
+        private final int[] answerIds;
         
         public QuizData(String question, String correctAnswer, List<String> allAnswers, int correctIndex) {
+            this(question, correctAnswer, allAnswers, correctIndex, -1, null);
+        }
+        
+        public QuizData(String question, String correctAnswer, List<String> allAnswers, int correctIndex,
+                        int questionIndex, int[] answerIds) {
             this.question = question;
             this.correctAnswer = correctAnswer;
             this.allAnswers = allAnswers;
             this.correctIndex = correctIndex;
+            this.questionIndex = questionIndex;
+            this.answerIds = answerIds;
         }
         
         public String getQuestion() {
@@ -166,5 +393,20 @@ Sulfate	Produce a white precipitate with barium chloride in the presence of dilu
         public int getCorrectIndex() {
             return correctIndex;
         }
+        
+        /**
+         * Returns the bank index of the question, or -1 if it is not from a bank.
+         */
+        public int getQuestionIndex() {
+            return questionIndex;
+        }
+        
+        /**
+         * Returns the answer id in each slot, -1 for a {@link #defaultOption}, or
+         * null if the card is not from a bank.
+         */
+        public int[] getAnswerIds() {
+            return answerIds;
+        }
     }
 }
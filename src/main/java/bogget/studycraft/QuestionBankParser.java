@@ -0,0 +1,228 @@
+package bogget.studycraft;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses tab-separated question banks (one "question TAB answer" per line, as
+ * Quizlet exports them) in a single pass with no regex and no per-line arrays.
+ * Blank lines are skipped. Any other line without a tab, or with nothing on one
+ * side of it, is counted as invalid and reported once in the result's
+ * {@link Result#getErrorSummary() summary} instead of being logged line by line.
+ *
+ * Large inputs are cut into chunks at line breaks and parsed in parallel on the
+ * common fork-join pool; the results are joined back in order.
+ */
+public final class QuestionBankParser {
+    // Below this many chars a single thread is faster than forking
+    private static final int PARALLEL_THRESHOLD = 64 * 1024;
+    // Only the first few bad lines are kept as examples
+    private static final int MAX_ERROR_SAMPLES = 5;
+    private static final int MAX_SAMPLE_LENGTH = 40;
+
+    private QuestionBankParser() {}
+
+    /**
+     * The parsed questions and answers, in input order, and a summary of the lines
+     * that could not be parsed.
+     */
+    public static final class Result {
+        private final List<String> questions = new ArrayList<>();
+        private final List<String> answers = new ArrayList<>();
+        // Line numbers and text of the first few invalid lines
+        private final int[] errorLines = new int[MAX_ERROR_SAMPLES];
+        private final String[] errorTexts = new String[MAX_ERROR_SAMPLES];
+        private int errorSamples = 0;
+        private int invalidLines = 0;
+        // Lines seen, so chunk results can be renumbered when they are joined
+        private int lineCount = 0;
+
+        public int size() {
+            return questions.size();
+        }
+
+        public String getQuestion(int index) {
+            return questions.get(index);
+        }
+
+        public String getAnswer(int index) {
+            return answers.get(index);
+        }
+
+        public int getInvalidLines() {
+            return invalidLines;
+        }
+
+        /**
+         * Describes the invalid lines with a few examples, or returns null if every
+         * line parsed.
+         */
+        public String getErrorSummary() {
+            if (invalidLines == 0) {
+                return null;
+            }
+            StringBuilder summary = new StringBuilder();
+            summary.append(invalidLines).append(" line(s) were not \"question<TAB>answer\", e.g. ");
+            for (int i = 0; i < errorSamples; i++) {
+                if (i > 0) {
+                    summary.append("; ");
+                }
+                summary.append("line ").append(errorLines[i]).append(": \"").append(errorTexts[i]).append('"');
+            }
+            return summary.toString();
+        }
+
+        private void addLine(CharSequence text, int start, int end) {
+            lineCount++;
+            int tab = -1;
+            for (int i = start; i < end; i++) {
+                if (text.charAt(i) == '\t') {
+                    tab = i;
+                    break;
+                }
+            }
+
+            int lineStart = trimStart(text, start, end);
+            int lineEnd = trimEnd(text, lineStart, end);
+            if (lineStart == lineEnd) {
+                return;
+            }
+
+            if (tab >= 0) {
+                // Everything after the first tab is the answer, tabs included
+                int questionStart = trimStart(text, start, tab);
+                int questionEnd = trimEnd(text, questionStart, tab);
+                int answerStart = trimStart(text, tab + 1, end);
+                int answerEnd = trimEnd(text, answerStart, end);
+                if (questionStart < questionEnd && answerStart < answerEnd) {
+                    questions.add(text.subSequence(questionStart, questionEnd).toString());
+                    answers.add(text.subSequence(answerStart, answerEnd).toString());
+                    return;
+                }
+            }
+
+            invalidLines++;
+            if (errorSamples < MAX_ERROR_SAMPLES) {
+                int sampleEnd = Math.min(lineEnd, lineStart + MAX_SAMPLE_LENGTH);
+                String sample = text.subSequence(lineStart, sampleEnd).toString().replace('\t', ' ');
+                errorLines[errorSamples] = lineCount;
+                errorTexts[errorSamples++] = sampleEnd < lineEnd ? sample + "..." : sample;
+            }
+        }
+
+        // Appends a later chunk's result, shifting its line numbers past ours
+        private void append(Result later) {
+            questions.addAll(later.questions);
+            answers.addAll(later.answers);
+            invalidLines += later.invalidLines;
+            for (int i = 0; i < later.errorSamples && errorSamples < MAX_ERROR_SAMPLES; i++) {
+                errorLines[errorSamples] = later.errorLines[i] + lineCount;
+                errorTexts[errorSamples++] = later.errorTexts[i];
+            }
+            lineCount += later.lineCount;
+        }
+    }
+
+    /**
+     * Parses a whole question bank held in memory, in parallel if it is large.
+     */
+    public static Result parse(CharSequence content) {
+        if (content.length() < PARALLEL_THRESHOLD) {
+            return parseRange(content, 0, content.length());
+        }
+        return ForkJoinPool.commonPool().invoke(new ParseTask(content, 0, content.length()));
+    }
+
+    /**
+     * Parses a question bank as it is read, one buffer at a time.
+     */
+    public static Result parse(Reader reader) throws IOException {
+        Result result = new Result();
+        StringBuilder line = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    result.addLine(line, 0, line.length());
+                    line.setLength(0);
+                } else {
+                    line.append(buffer[i]);
+                }
+            }
+        }
+        if (line.length() > 0) {
+            result.addLine(line, 0, line.length());
+        }
+        return result;
+    }
+
+    // Parses the lines in [start, end); start is at the beginning of a line
+    private static Result parseRange(CharSequence content, int start, int end) {
+        Result result = new Result();
+        int lineStart = start;
+        for (int i = start; i < end; i++) {
+            if (content.charAt(i) == '\n') {
+                result.addLine(content, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < end) {
+            result.addLine(content, lineStart, end);
+        }
+        return result;
+    }
+
+    // Trimming matches String.trim, which also drops the \r of Windows line endings
+    private static int trimStart(CharSequence text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(CharSequence text, int start, int end) {
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static class ParseTask extends RecursiveTask<Result> {
+        private final CharSequence content;
+        private final int start;
+        private final int end;
+
+        ParseTask(CharSequence content, int start, int end) {
+            this.content = content;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Result compute() {
+            if (end - start < PARALLEL_THRESHOLD) {
+                return parseRange(content, start, end);
+            }
+
+            // Split just after the line break nearest the middle
+            int split = start + (end - start) / 2;
+            while (split < end && content.charAt(split - 1) != '\n') {
+                split++;
+            }
+            if (split >= end) {
+                return parseRange(content, start, end);
+            }
+
+            ParseTask second = new ParseTask(content, split, end);
+            second.fork();
+            Result result = new ParseTask(content, start, split).compute();
+            result.append(second.join());
+            return result;
+        }
+    }
+}
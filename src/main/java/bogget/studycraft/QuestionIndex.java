@@ -0,0 +1,62 @@
+package bogget.studycraft;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns dense int ids to question texts so per-player stats can be stored in
+ * primitive arrays indexed by question. Questions from the loaded question bank
+ * are registered first; texts only seen in saved stats (from an older deck) are
+ * appended as they are loaded. Ids are stable for the lifetime of the server.
+ */
+public class QuestionIndex {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] texts = new String[64];
+    private int size = 0;
+
+    /**
+     * Returns the id for a question, assigning the next free one if it is new.
+     */
+    public synchronized int idOf(String question) {
+        Integer id = ids.get(question);
+        if (id != null) {
+            return id;
+        }
+
+        if (size == texts.length) {
+            texts = Arrays.copyOf(texts, size * 2);
+        }
+        texts[size] = question;
+        ids.put(question, size);
+        return size++;
+    }
+
+    /**
+     * Returns the id for a question, or -1 if it has never been seen.
+     */
+    public synchronized int find(String question) {
+        Integer id = ids.get(question);
+        return id != null ? id : -1;
+    }
+
+    public synchronized String textOf(int id) {
+        return id >= 0 && id < size ? texts[id] : null;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Registers every question in a bank, under one lock, and returns their ids
+     * by bank index.
+     */
+    public synchronized int[] registerAll(QuestionBank bank) {
+        int[] bankIds = new int[bank.getQuestionCount()];
+        for (int i = 0; i < bankIds.length; i++) {
+            bankIds[i] = idOf(bank.getQuestionText(i));
+        }
+        return bankIds;
+    }
+}
@@ -0,0 +1,41 @@
+package bogget.studycraft;
+
+/**
+ * How the server picks the next question when a player uses a quiz card.
+ */
+public enum QuestionSelection {
+    // Every question equally likely
+    RANDOM("Random", "Every question is equally likely"),
+    // Weighted towards questions the player gets wrong or hasn't seen lately
+    ADAPTIVE("Adaptive", "Ask more often about questions you get wrong or haven't seen in a while"),
+    // The next card due for review, scheduled with SM-2
+    SPACED_REPETITION("Spaced", "Ask each question again just before you are likely to forget it");
+
+    private final String label;
+    private final String description;
+
+    QuestionSelection(String label, String description) {
+        this.label = label;
+        this.description = description;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public QuestionSelection next() {
+        return values()[(ordinal() + 1) % values().length];
+    }
+
+    /**
+     * Looks up a mode sent over the network, falling back to random for unknown values.
+     */
+    public static QuestionSelection byOrdinal(int ordinal) {
+        QuestionSelection[] values = values();
+        return ordinal >= 0 && ordinal < values.length ? values[ordinal] : RANDOM;
+    }
+}
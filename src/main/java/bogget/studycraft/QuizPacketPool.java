@@ -0,0 +1,190 @@
+package bogget.studycraft;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Ready-to-send quiz cards per player, already encoded as
+ * {@link StudycraftNetworking#OPEN_QUIZ_PACKET} payloads, so using a quiz card
+ * on the server thread is just taking one off a queue. Cards are made on a
+ * background thread.
+ *
+ * {@link QuestionSelection#RANDOM Random} cards do not depend on the player, so
+ * a few are kept and each draw queues a refill. Adaptive and spaced-repetition
+ * picks depend on the player's latest answer (the next due card stays the same
+ * until the player answers it), so only one next card is kept, made after each
+ * answer: {@link #answered} drops the card picked before the answer and picks
+ * another from the stats as they are now.
+ *
+ * A player's cards are picked for one deck and selection mode and are thrown
+ * away when either changes, or when {@link #invalidate} is called because the
+ * encoding they need changed.
+ */
+public class QuizPacketPool {
+    private static final int RANDOM_CARDS_PER_PLAYER = 3;
+    private static final int PICKED_CARDS_PER_PLAYER = 1;
+
+    /**
+     * One pre-generated card: the question and options picked, and their encoded
+     * payload.
+     */
+    public static class Card {
+        private final QuestionBank.QuizData quizData;
+        private final byte[] payload;
+
+        public Card(QuestionBank.QuizData quizData, byte[] payload) {
+            this.quizData = quizData;
+            this.payload = payload;
+        }
+
+        public QuestionBank.QuizData getQuizData() {
+            return quizData;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    private static class PlayerPool {
+        private final ArrayDeque<Card> cards = new ArrayDeque<>();
+        private QuestionBank bank;
+        private QuestionSelection selection;
+        private Supplier<Card> generator;
+        // Bumped on every invalidation, so a card generated before it is dropped
+        private int generation = 0;
+        private boolean refilling = false;
+
+        int capacity() {
+            return selection == QuestionSelection.RANDOM ? RANDOM_CARDS_PER_PLAYER : PICKED_CARDS_PER_PLAYER;
+        }
+    }
+
+    private final Map<UUID, PlayerPool> pools = new ConcurrentHashMap<>();
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "StudyCraft Quiz Pool");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Returns an encoded card for this player from {@code bank}, taking a
+     * pre-generated one if there is one and generating it now otherwise.
+     * {@code generator} picks and encodes one card in the given selection mode;
+     * it runs on the pool's thread for refills, so it must be thread-safe.
+     */
+    public Card take(UUID playerId, QuestionBank bank, QuestionSelection selection, Supplier<Card> generator) {
+        PlayerPool pool = pools.computeIfAbsent(playerId, id -> new PlayerPool());
+        Card card;
+        synchronized (pool) {
+            if (pool.bank != bank || pool.selection != selection) {
+                reset(pool);
+                pool.bank = bank;
+                pool.selection = selection;
+            }
+            pool.generator = generator;
+            card = pool.cards.poll();
+        }
+        // A picked card is only replaced once the player has answered it
+        if (selection == QuestionSelection.RANDOM) {
+            refill(pool);
+        }
+        return card != null ? card : generator.get();
+    }
+
+    /**
+     * Picks the player's next card after an answer has been recorded, dropping
+     * the one picked from their stats before it. Random cards are kept.
+     */
+    public void answered(UUID playerId) {
+        PlayerPool pool = pools.get(playerId);
+        if (pool == null) {
+            return;
+        }
+        synchronized (pool) {
+            if (pool.selection == QuestionSelection.RANDOM) {
+                return;
+            }
+            reset(pool);
+        }
+        refill(pool);
+    }
+
+    /**
+     * Replaces a player's pre-generated cards with fresh ones, as when their
+     * client can take compact cards.
+     */
+    public void invalidate(UUID playerId) {
+        PlayerPool pool = pools.get(playerId);
+        if (pool != null) {
+            synchronized (pool) {
+                reset(pool);
+            }
+            refill(pool);
+        }
+    }
+
+    public void remove(UUID playerId) {
+        PlayerPool pool = pools.remove(playerId);
+        if (pool != null) {
+            synchronized (pool) {
+                reset(pool);
+                pool.generator = null;
+            }
+        }
+    }
+
+    public void close() {
+        worker.shutdownNow();
+        pools.clear();
+    }
+
+    private static void reset(PlayerPool pool) {
+        pool.cards.clear();
+        pool.generation++;
+    }
+
+    private void refill(PlayerPool pool) {
+        synchronized (pool) {
+            if (pool.refilling || pool.generator == null || pool.cards.size() >= pool.capacity()) {
+                return;
+            }
+            pool.refilling = true;
+        }
+        worker.execute(() -> {
+            try {
+                while (true) {
+                    int generation;
+                    Supplier<Card> generator;
+                    synchronized (pool) {
+                        // Cleared in the same lock as the check, so no invalidation is missed
+                        if (pool.generator == null || pool.cards.size() >= pool.capacity()) {
+                            pool.refilling = false;
+                            return;
+                        }
+                        generation = pool.generation;
+                        generator = pool.generator;
+                    }
+                    Card card = generator.get();
+                    synchronized (pool) {
+                        // Invalidated while generating; go round again for the new state
+                        if (pool.generation == generation) {
+                            pool.cards.add(card);
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                Studycraft.LOGGER.error("Failed to pre-generate a quiz card", e);
+                synchronized (pool) {
+                    pool.refilling = false;
+                }
+            }
+        });
+    }
+}
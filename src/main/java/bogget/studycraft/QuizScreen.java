@@ -3,8 +3,11 @@ package bogget.studycraft;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.text.Text;
 import net.minecraft.client.gui.DrawContext;
+import net.minecraft.client.gui.widget.ButtonWidget;
+import net.minecraft.client.gui.widget.TextFieldWidget;
 import net.minecraft.text.OrderedText;
 import net.minecraft.util.math.MathHelper;
+import org.lwjgl.glfw.GLFW;
 
 import java.util.List;
 import java.util.ArrayList;
@@ -12,7 +15,14 @@ import java.util.ArrayList;
 public class QuizScreen extends Screen {
     private final QuestionBank.QuizData quizData;
     private final List<String> answers;
-    private final int correctAnswerIndex;
+    // Only known once the server has graded the pick
+    private int correctAnswerIndex = -1;
+    // The server's id for this card, which answers refer to
+    private final int sessionId;
+    // Whether the player types the answer instead of picking an option
+    private final boolean typed;
+    // When the card was shown, for the answer time sent with the pick
+    private final long openedAtNanos = System.nanoTime();
     
     // Variables for the result display
     private boolean showingResult = false;
@@ -21,6 +31,15 @@ public class QuizScreen extends Screen {
     private long resultDisplayStartTime = 0;
     private static final long RESULT_DISPLAY_DURATION = 3000; // 3 seconds in milliseconds
     
+    // Set from sending an answer until the server's verdict arrives
+    private boolean waitingForGrade = false;
+    
+    // Typed mode: the answer box, and the server's verdict once it arrives
+    private TextFieldWidget answerField;
+    private String typedAnswer = "";
+    private String gradedCorrectAnswer;
+    private String suggestion;
+    
     // Custom answer panel (replacing buttons)
     private List<AnswerPanel> answerPanels = new ArrayList<>();
     
@@ -30,11 +49,12 @@ public class QuizScreen extends Screen {
     private static final int PANEL_PADDING = 15;
     private static final int PANEL_MARGIN = 10;
     
-    public QuizScreen(QuestionBank.QuizData quizData) {
+    public QuizScreen(QuestionBank.QuizData quizData, int sessionId, boolean typed) {
         super(Text.literal("Quiz Question"));
         this.quizData = quizData;
         this.answers = quizData.getAllAnswers();
-        this.correctAnswerIndex = quizData.getCorrectIndex();
+        this.sessionId = sessionId;
+        this.typed = typed;
     }
     
     @Override
@@ -42,6 +62,11 @@ public class QuizScreen extends Screen {
         super.init();
         answerPanels.clear();
         
+        if (typed) {
+            initAnswerField();
+            return;
+        }
+        
         int totalAnswers = answers.size();
         int columns = Math.min(GRID_COLUMNS, totalAnswers);
         int rows = MathHelper.ceil((float) totalAnswers / columns);
@@ -72,6 +97,71 @@ public class QuizScreen extends Screen {
         }
     }
     
+    private void initAnswerField() {
+        int fieldWidth = Math.min(300, width - 40);
+        int x = (width - fieldWidth) / 2;
+        int y = height / 3 + 30; // Below question text
+        
+        // Survives a resize, which rebuilds the widgets
+        answerField = new TextFieldWidget(textRenderer, x, y, fieldWidth, 20, Text.literal("Your answer"));
+        answerField.setMaxLength(256);
+        answerField.setText(typedAnswer);
+        answerField.setChangedListener(text -> typedAnswer = text);
+        answerField.setEditable(!waitingForGrade && !showingResult);
+        addDrawableChild(answerField);
+        setInitialFocus(answerField);
+        
+        ButtonWidget submitButton = ButtonWidget.builder(Text.literal("Submit"), button -> submitTypedAnswer())
+            .dimensions(width / 2 - 50, y + 30, 100, 20)
+            .build();
+        submitButton.active = !waitingForGrade && !showingResult;
+        addDrawableChild(submitButton);
+    }
+    
+    private void submitTypedAnswer() {
+        if (waitingForGrade || showingResult || typedAnswer.isBlank()) {
+            return;
+        }
+        waitingForGrade = true;
+        
+        // The server grades it and answers with showResult
+        StudycraftNetworking.sendTypedAnswerPacket(sessionId, typedAnswer, getAnswerTimeMs());
+        clearChildren();
+        init();
+    }
+    
+    private int getAnswerTimeMs() {
+        return (int) Math.min((System.nanoTime() - openedAtNanos) / 1_000_000L, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Shows the server's verdict on the answer: whether it was right, and the
+     * right option's index (or -1 for a typed answer) and text.
+     */
+    public void showResult(boolean correct, int correctIndex, String correctAnswer, String suggestion) {
+        if (!waitingForGrade) {
+            return;
+        }
+        waitingForGrade = false;
+        isCorrect = correct;
+        correctAnswerIndex = correctIndex;
+        gradedCorrectAnswer = correctAnswer;
+        this.suggestion = suggestion;
+        showingResult = true;
+        resultDisplayStartTime = System.currentTimeMillis();
+        clearChildren();
+        init();
+    }
+    
+    @Override
+    public boolean keyPressed(int keyCode, int scanCode, int modifiers) {
+        if (typed && (keyCode == GLFW.GLFW_KEY_ENTER || keyCode == GLFW.GLFW_KEY_KP_ENTER)) {
+            submitTypedAnswer();
+            return true;
+        }
+        return super.keyPressed(keyCode, scanCode, modifiers);
+    }
+    
     @Override
     public void render(DrawContext context, int mouseX, int mouseY, float delta) {
         renderBackground(context);
@@ -94,6 +184,14 @@ public class QuizScreen extends Screen {
             panel.render(context, mouseX, mouseY);
         }
         
+        if (typed) {
+            // The answer box and submit button
+            super.render(context, mouseX, mouseY, delta);
+            renderTypedResult(context);
+        } else if (waitingForGrade) {
+            context.drawCenteredTextWithShadow(textRenderer, Text.literal("§7Checking...").asOrderedText(), width / 2, height - 50, 0xFFFFFF);
+        }
+        
         // Draw result message if showing result
         if (showingResult) {
             String resultMessage = isCorrect ? 
@@ -120,19 +218,41 @@ public class QuizScreen extends Screen {
         }
     }
     
+    private void renderTypedResult(DrawContext context) {
+        int y = height / 3 + 90;
+        if (waitingForGrade) {
+            context.drawCenteredTextWithShadow(textRenderer, Text.literal("§7Checking...").asOrderedText(), width / 2, y, 0xFFFFFF);
+            return;
+        }
+        if (!showingResult || isCorrect) {
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        if (suggestion != null && !suggestion.equals(gradedCorrectAnswer)) {
+            lines.add("§6Did you mean: §r" + suggestion + "§6?");
+        }
+        if (gradedCorrectAnswer != null && !gradedCorrectAnswer.isEmpty()) {
+            lines.add("§6Answer: §r" + gradedCorrectAnswer);
+        }
+        for (String line : lines) {
+            for (OrderedText wrapped : textRenderer.wrapLines(Text.literal(line), width - 40)) {
+                context.drawCenteredTextWithShadow(textRenderer, wrapped, width / 2, y, 0xFFFFFF);
+                y += textRenderer.fontHeight + 2;
+            }
+        }
+    }
+    
     @Override
     public boolean mouseClicked(double mouseX, double mouseY, int button) {
-        if (!showingResult && button == 0) { // Left click
+        if (!showingResult && !waitingForGrade && button == 0) { // Left click
             for (AnswerPanel panel : answerPanels) {
                 if (panel.isHovered((int)mouseX, (int)mouseY)) {
                     // Handle answer selection
                     selectedAnswerIndex = panel.index;
-                    isCorrect = (selectedAnswerIndex == correctAnswerIndex);
-                    showingResult = true;
-                    resultDisplayStartTime = System.currentTimeMillis();
+                    waitingForGrade = true;
                     
-                    // Send answer to server
-                    StudycraftNetworking.sendAnswerPacket(isCorrect ? 0 : 1, quizData.getQuestion(), quizData.getCorrectAnswer());
+                    // Send the pick to the server, which grades it and answers with showResult
+                    StudycraftNetworking.sendAnswerPacket(sessionId, selectedAnswerIndex, getAnswerTimeMs());
                     return true;
                 }
             }
@@ -143,6 +263,9 @@ public class QuizScreen extends Screen {
     @Override
     public void tick() {
         super.tick();
+        if (answerField != null) {
+            answerField.tick();
+        }
         
         // Check if we need to close the screen
         if (showingResult && System.currentTimeMillis() - resultDisplayStartTime > RESULT_DISPLAY_DURATION) {
@@ -186,6 +309,8 @@ public class QuizScreen extends Screen {
                 } else {
                     bgColor = 0xFF505050; // Dark gray for unselected answers
                 }
+            } else if (waitingForGrade) {
+                bgColor = index == selectedAnswerIndex ? 0xFF707070 : 0xFF505050; // Keep the pick lit until graded
             } else {
                 bgColor = hovered ? 0xFF707070 : 0xFF505050; // Lighter gray when hovered
             }
@@ -0,0 +1,182 @@
+package bogget.studycraft;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The quiz cards each player has open. The server keeps the card it sent,
+ * including the order the answers were shuffled into, so the client only
+ * reports which card it is answering, which option it picked and how long the
+ * player looked at it; what counts as correct is decided here, and the time
+ * reported can never exceed the time since the card was sent.
+ *
+ * Cards nobody answers expire after {@link #SESSION_TTL_TICKS}. Expiry is
+ * driven by a hashed timer wheel advanced every server tick: each session is
+ * filed in the slot it runs out in, with the number of full turns left, so a
+ * tick only looks at one slot however many sessions are open. Sessions that
+ * are answered first are just marked closed and skipped when their slot comes
+ * round.
+ *
+ * Server thread only.
+ */
+public class QuizSessions {
+    // Unanswered cards expire after 5 minutes
+    static final int SESSION_TTL_TICKS = 5 * 60 * 20;
+    // Cards a player can have open at once; opening another drops the oldest
+    static final int MAX_OPEN_PER_PLAYER = 8;
+    // The wheel turns one slot a second and goes round in about a minute
+    private static final int WHEEL_SLOTS = 64;
+    private static final int TICKS_PER_SLOT = 20;
+
+    /**
+     * One quiz card sent to a player and not yet answered.
+     */
+    public static class Session {
+        private final UUID playerId;
+        private final int id;
+        private final QuestionBank bank;
+        private final QuestionBank.QuizData quizData;
+        private final boolean typed;
+        private final long issuedAtNanos = System.nanoTime();
+        // Full turns of the wheel left before it expires
+        private int rounds;
+        private boolean closed = false;
+
+        Session(UUID playerId, int id, QuestionBank bank, QuestionBank.QuizData quizData, boolean typed) {
+            this.playerId = playerId;
+            this.id = id;
+            this.bank = bank;
+            this.quizData = quizData;
+            this.typed = typed;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * The bank the card was drawn from, which may since have been replaced.
+         */
+        public QuestionBank getBank() {
+            return bank;
+        }
+
+        public QuestionBank.QuizData getQuizData() {
+            return quizData;
+        }
+
+        public boolean isTyped() {
+            return typed;
+        }
+
+        /**
+         * Milliseconds since the card was sent.
+         */
+        public int getAgeMs() {
+            return (int) Math.min((System.nanoTime() - issuedAtNanos) / 1_000_000L, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Bounds the answer time the client measured by the age of the card, which
+         * also includes the time the card spent on the network.
+         */
+        public int clampLatencyMs(int reportedMs) {
+            return Math.max(0, Math.min(reportedMs, getAgeMs()));
+        }
+    }
+
+    private static class PlayerSessions {
+        // Oldest first
+        private final LinkedHashMap<Integer, Session> open = new LinkedHashMap<>();
+        private int nextId = 0;
+    }
+
+    private final Map<UUID, PlayerSessions> players = new HashMap<>();
+    private final ArrayDeque<Session>[] wheel;
+    private int cursor = 0;
+    private int ticks = 0;
+
+    @SuppressWarnings("unchecked")
+    public QuizSessions() {
+        wheel = new ArrayDeque[WHEEL_SLOTS];
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Starts a session for a card about to be sent to the player.
+     */
+    public Session open(UUID playerId, QuestionBank bank, QuestionBank.QuizData quizData, boolean typed) {
+        PlayerSessions sessions = players.computeIfAbsent(playerId, id -> new PlayerSessions());
+        // Small ids keep the varint short; wrapping is harmless with this few open
+        sessions.nextId = (sessions.nextId + 1) & 0x7FFFFFFF;
+        Session session = new Session(playerId, sessions.nextId, bank, quizData, typed);
+        sessions.open.put(session.id, session);
+        if (sessions.open.size() > MAX_OPEN_PER_PLAYER) {
+            Iterator<Session> oldest = sessions.open.values().iterator();
+            oldest.next().closed = true;
+            oldest.remove();
+        }
+
+        int slots = (SESSION_TTL_TICKS + TICKS_PER_SLOT - 1) / TICKS_PER_SLOT;
+        session.rounds = (slots - 1) / WHEEL_SLOTS;
+        wheel[(cursor + slots) % WHEEL_SLOTS].add(session);
+        return session;
+    }
+
+    /**
+     * Ends a session because the player answered it. Returns null if the player
+     * has no such session, because it expired or was already answered.
+     */
+    public Session close(UUID playerId, int sessionId) {
+        PlayerSessions sessions = players.get(playerId);
+        Session session = sessions != null ? sessions.open.remove(sessionId) : null;
+        if (session != null) {
+            session.closed = true;
+        }
+        return session;
+    }
+
+    public void remove(UUID playerId) {
+        PlayerSessions sessions = players.remove(playerId);
+        if (sessions != null) {
+            for (Session session : sessions.open.values()) {
+                session.closed = true;
+            }
+        }
+    }
+
+    /**
+     * Advances the wheel by one server tick, expiring the sessions that ran out.
+     */
+    public void tick() {
+        if (++ticks < TICKS_PER_SLOT) {
+            return;
+        }
+        ticks = 0;
+        cursor = (cursor + 1) % WHEEL_SLOTS;
+
+        Iterator<Session> slot = wheel[cursor].iterator();
+        while (slot.hasNext()) {
+            Session session = slot.next();
+            if (session.closed) {
+                slot.remove();
+            } else if (session.rounds > 0) {
+                session.rounds--;
+            } else {
+                slot.remove();
+                session.closed = true;
+                PlayerSessions sessions = players.get(session.playerId);
+                if (sessions != null) {
+                    // Kept while the player is online, so ids are never reused
+                    sessions.open.remove(session.id);
+                }
+            }
+        }
+    }
+}
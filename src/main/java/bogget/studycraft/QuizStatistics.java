@@ -1,34 +1,87 @@
 package bogget.studycraft;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
+import net.minecraft.nbt.NbtCompound;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.world.PersistentState;
 import org.slf4j.Logger;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class QuizStatistics {
+/**
+ * Per-player quiz statistics for the current world, saved as part of the world's
+ * normal save cycle through the overworld PersistentStateManager.
+ *
+ * Safe to use from any thread: each player's shard has its own lock, and
+ * background work such as saving, leaderboards or exports should read through
+ * {@link #snapshot(UUID)} or {@link #snapshotLoadedPlayers()}, which freeze a
+ * consistent copy-on-write view and can then be streamed at leisure.
+ */
+public class QuizStatistics extends PersistentState {
     private static final Logger LOGGER = Studycraft.LOGGER;
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Gson GSON = new Gson();
+    private static final String STATE_ID = "studycraft_stats";
     
-    // Map structure: playerUuid -> questionText -> StatsEntry
-    private Map<UUID, Map<String, StatsEntry>> playerStats = new HashMap<>();
-    private File statsFile;
+    // Only players who are online (or still waiting to be saved) are kept in memory
+    private final Map<UUID, PlayerStatsShard> loadedShards = new ConcurrentHashMap<>();
+    private final Map<UUID, PlayerStatsShard> unloadingShards = new ConcurrentHashMap<>();
+    private final MinecraftServer server;
+    private final File statsDir;
+    private final QuestionIndex questionIndex = new QuestionIndex();
+    // The stats version each player's client was last sent, once it has asked for its stats
+    private final Map<UUID, Long> clientStatsVersions = new ConcurrentHashMap<>();
+    // Set whenever a shard has answers that the next world save must write
+    private final AtomicBoolean shardsDirty = new AtomicBoolean();
+    
+    // Player shard reads and writes run on this thread so the server thread never touches disk
+    private final ExecutorService io = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "StudyCraft Stats IO");
+        thread.setDaemon(true);
+        return thread;
+    });
     
     public static class StatsEntry {
         private int timesCorrect = 0;
         private int timesWrong = 0;
+        // Packed AnswerHistory attempts, oldest first
+        private long[] recentAttempts = new long[0];
         
         public StatsEntry() {}
         
+        public StatsEntry(int timesCorrect, int timesWrong) {
+            this.timesCorrect = timesCorrect;
+            this.timesWrong = timesWrong;
+        }
+        
+        /**
+         * Builds an entry straight from counts packed as in {@link PlayerStatsShard}
+         * and the question's recent attempts.
+         */
+        public static StatsEntry of(long packedCounts, long[] recentAttempts) {
+            StatsEntry entry = new StatsEntry(PlayerStatsShard.correctOf(packedCounts), PlayerStatsShard.wrongOf(packedCounts));
+            entry.recentAttempts = recentAttempts;
+            return entry;
+        }
+        
         public void incrementCorrect() {
             timesCorrect++;
         }
@@ -37,6 +90,11 @@ public class QuizStatistics {
             timesWrong++;
         }
         
+        public void add(StatsEntry other) {
+            timesCorrect += other.timesCorrect;
+            timesWrong += other.timesWrong;
+        }
+        
         public int getTimesCorrect() {
             return timesCorrect;
         }
@@ -53,85 +111,331 @@ public class QuizStatistics {
             if (getTotal() == 0) return 0;
             return (float) timesCorrect / getTotal() * 100f;
         }
+        
+        /**
+         * Returns the last few attempts at this question, oldest first. Use the
+         * {@link AnswerHistory} accessors to unpack them.
+         */
+        public long[] getRecentAttempts() {
+            return recentAttempts;
+        }
+        
+        public void setRecentAttempts(long[] recentAttempts) {
+            this.recentAttempts = recentAttempts;
+        }
+        
+        public int getRecentCorrect() {
+            int correct = 0;
+            for (long attempt : recentAttempts) {
+                if (AnswerHistory.isCorrect(attempt)) correct++;
+            }
+            return correct;
+        }
+        
+        public int getAverageLatencyMs() {
+            if (recentAttempts.length == 0) return 0;
+            long total = 0;
+            for (long attempt : recentAttempts) {
+                total += AnswerHistory.latencyMsOf(attempt);
+            }
+            return (int) (total / recentAttempts.length);
+        }
     }
     
-    public QuizStatistics(MinecraftServer server) {
-        File worldDir = new File(server.getRunDirectory(), "world");
-        File dataDir = new File(worldDir, "data");
-        if (!dataDir.exists()) {
-            dataDir.mkdirs();
+    private QuizStatistics(MinecraftServer server) {
+        this.server = server;
+        
+        // The same directory the overworld's PersistentStateManager uses
+        File dataDir = server.getSavePath(WorldSavePath.ROOT).resolve("data").toFile();
+        this.statsDir = new File(dataDir, "studycraft");
+        if (!statsDir.exists()) {
+            statsDir.mkdirs();
         }
         
-        this.statsFile = new File(dataDir, "studycraft_stats.json");
-        loadStats();
+        // Give the loaded bank's questions the lowest ids
+        registerQuestions(Studycraft.getQuestionBank());
+        
+        // Queued first, so it finishes before any player shard is loaded
+        io.execute(() -> migrateSingleFileStats(dataDir));
     }
     
-    private void loadStats() {
-        if (statsFile.exists()) {
-            try (FileReader reader = new FileReader(statsFile)) {
-                Type type = new TypeToken<Map<UUID, Map<String, StatsEntry>>>(){}.getType();
-                playerStats = GSON.fromJson(reader, type);
-                if (playerStats == null) {
-                    playerStats = new HashMap<>();
-                }
-                LOGGER.info("Loaded quiz statistics for {} players", playerStats.size());
-            } catch (IOException e) {
-                LOGGER.error("Failed to load quiz statistics", e);
-                playerStats = new HashMap<>();
+    /**
+     * Returns the stats for the server's world, registered on the overworld's
+     * PersistentStateManager so they are saved with every autosave and /save-all.
+     */
+    public static QuizStatistics getOrCreate(MinecraftServer server) {
+        return server.getOverworld().getPersistentStateManager().getOrCreate(
+            nbt -> new QuizStatistics(server),
+            () -> new QuizStatistics(server),
+            STATE_ID
+        );
+    }
+    
+    @Override
+    public NbtCompound writeNbt(NbtCompound nbt) {
+        nbt.putInt("Format", StatsNbt.FORMAT);
+        return nbt;
+    }
+    
+    /**
+     * Called by the PersistentStateManager whenever the world saves. Player shards
+     * are written alongside the state itself, and never in between.
+     */
+    @Override
+    public void save(File file) {
+        if (shardsDirty.getAndSet(false)) {
+            saveShards();
+        }
+        super.save(file);
+    }
+    
+    // Snapshots dirty shards on the saving thread; encoding and writing happen on the I/O thread
+    private void saveShards() {
+        List<PlayerStatsShard> shards = new ArrayList<>(loadedShards.values());
+        shards.addAll(unloadingShards.values());
+        
+        for (PlayerStatsShard shard : shards) {
+            PlayerStatsSnapshot snapshot = shard.takeSnapshot();
+            if (snapshot != null) {
+                io.execute(() -> writeShard(shard, snapshot));
             }
         }
     }
     
-    public void saveStats() {
-        try (FileWriter writer = new FileWriter(statsFile)) {
-            GSON.toJson(playerStats, writer);
-            LOGGER.info("Saved quiz statistics");
+    private void writeShard(PlayerStatsShard shard, PlayerStatsSnapshot snapshot) {
+        try {
+            shard.write(snapshot);
+            // Evicted players can be dropped once they are on disk
+            if (!shard.isDirty()) {
+                unloadingShards.remove(snapshot.getPlayerId(), shard);
+            }
         } catch (IOException e) {
+            // Retry on the next world save
+            shard.markDirty();
+            markShardsDirty();
             LOGGER.error("Failed to save quiz statistics", e);
         }
     }
     
-    public void recordAnswer(UUID playerId, String question, boolean correct) {
-        // Get or create player map
-        Map<String, StatsEntry> playerMap = playerStats.computeIfAbsent(playerId, k -> new HashMap<>());
-        
-        // Get or create stats entry for this question
-        StatsEntry entry = playerMap.computeIfAbsent(question, k -> new StatsEntry());
+    private void markShardsDirty() {
+        shardsDirty.set(true);
+        server.execute(this::markDirty);
+    }
+    
+    /**
+     * Loads a player's stats on the I/O thread and runs {@code onLoaded} on the
+     * server thread once they are available. Answers recorded in the meantime are
+     * merged with the loaded history.
+     */
+    public void loadPlayer(UUID playerId, Runnable onLoaded) {
+        getShard(playerId);
+        // Queued behind the shard's load task, so the stats are in memory when it runs
+        io.execute(() -> server.execute(onLoaded));
+    }
+    
+    /**
+     * Evicts a player's stats from memory. Unsaved answers are kept until the next
+     * world save writes them out.
+     */
+    public void unloadPlayer(UUID playerId) {
+        clientStatsVersions.remove(playerId);
+        // Atomic with getShard, so an answer arriving meanwhile cannot reload stale stats
+        loadedShards.computeIfPresent(playerId, (id, shard) -> {
+            if (shard.isDirty()) {
+                unloadingShards.put(id, shard);
+            }
+            return null;
+        });
+    }
+    
+    // Returns the player's shard, queueing a load if it is not in memory yet
+    private PlayerStatsShard getShard(UUID playerId) {
+        return loadedShards.computeIfAbsent(playerId, id -> {
+            // A player who rejoins before the next save gets their unsaved shard back
+            PlayerStatsShard unsaved = unloadingShards.remove(id);
+            if (unsaved != null) {
+                return unsaved;
+            }
+            
+            PlayerStatsShard shard = new PlayerStatsShard(id, statsDir, questionIndex);
+            io.execute(() -> {
+                shard.load();
+                if (shard.isDirty()) {
+                    markShardsDirty();
+                }
+            });
+            return shard;
+        });
+    }
+    
+    // Splits the old studycraft_stats.json into per-player shards
+    private void migrateSingleFileStats(File dataDir) {
+        File legacyFile = new File(dataDir, "studycraft_stats.json");
+        if (!legacyFile.exists()) {
+            return;
+        }
         
-        // Update stats
-        if (correct) {
-            entry.incrementCorrect();
-        } else {
-            entry.incrementWrong();
+        try {
+            byte[] data = Files.readAllBytes(legacyFile.toPath());
+            Type type = new TypeToken<Map<UUID, Map<String, StatsEntry>>>(){}.getType();
+            Map<UUID, Map<String, StatsEntry>> legacyStats = GSON.fromJson(new String(data, StandardCharsets.UTF_8), type);
+            if (legacyStats == null) {
+                legacyStats = new HashMap<>();
+            }
+            
+            for (Map.Entry<UUID, Map<String, StatsEntry>> entry : legacyStats.entrySet()) {
+                long[] counts = new long[questionIndex.size()];
+                for (Map.Entry<String, StatsEntry> question : entry.getValue().entrySet()) {
+                    int id = questionIndex.idOf(question.getKey());
+                    if (id >= counts.length) {
+                        counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+                    }
+                    counts[id] = PlayerStatsShard.pack(question.getValue().getTimesCorrect(), question.getValue().getTimesWrong());
+                }
+                // The old file kept no per-answer history
+                new PlayerStatsShard(entry.getKey(), statsDir, questionIndex)
+                    .write(StatsNbt.write(counts, new AnswerHistory(), new ReviewScheduler(), questionIndex));
+            }
+            
+            Files.move(legacyFile.toPath(), new File(dataDir, "studycraft_stats.json.migrated").toPath());
+            LOGGER.info("Migrated quiz statistics for {} players to per-player files", legacyStats.size());
+        } catch (IOException | JsonParseException e) {
+            LOGGER.error("Failed to migrate quiz statistics to per-player files", e);
+        }
+    }
+    
+    /**
+     * Writes anything the final world save could not (shards that finished loading
+     * after it) and stops the I/O thread. Called once the server has stopped.
+     */
+    public void close() {
+        List<PlayerStatsShard> shards = new ArrayList<>(loadedShards.values());
+        shards.addAll(unloadingShards.values());
+        for (PlayerStatsShard shard : shards) {
+            io.execute(() -> {
+                PlayerStatsSnapshot snapshot = shard.takeSnapshot();
+                if (snapshot != null) {
+                    writeShard(shard, snapshot);
+                }
+            });
         }
         
-        // Save after every update
-        saveStats();
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.warn("Timed out waiting for quiz statistics to save");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * @param latencyMs Time from the quiz screen opening to the answer click
+     */
+    public void recordAnswer(UUID playerId, String question, boolean correct, int latencyMs) {
+        getShard(playerId).record(questionIndex.idOf(question), correct, latencyMs);
+        shardsDirty.set(true);
+        markDirty();
+    }
+    
+    /**
+     * Picks the bank index of a player's next question, favouring the questions
+     * they struggle with or have not seen lately. Returns -1 if the bank is empty
+     * or the player's stats are not in memory.
+     */
+    public int pickQuestion(UUID playerId, QuestionBank bank) {
+        // Never loads the shard: a pick arriving after the player left must not bring them back
+        PlayerStatsShard shard = loadedShards.get(playerId);
+        return shard != null ? shard.pickQuestion(bank, ThreadLocalRandom.current()) : -1;
+    }
+    
+    /**
+     * Picks the bank index of the player's next spaced-repetition card: whatever is
+     * most overdue, else a card they have never seen. Returns -1 if the bank is
+     * empty or the player's stats are not in memory.
+     */
+    public int nextDueQuestion(UUID playerId, QuestionBank bank) {
+        PlayerStatsShard shard = loadedShards.get(playerId);
+        return shard != null ? shard.nextDueQuestion(bank) : -1;
+    }
+    
+    /**
+     * Registers a newly loaded question bank so its questions get ids up front,
+     * and keeps the bank's id mapping for the players' pickers. O(n); call it
+     * where the bank was parsed, off the server thread.
+     */
+    public void registerQuestions(QuestionBank bank) {
+        bank.getQuestionIds(questionIndex);
+    }
+    
+    public QuestionIndex getQuestionIndex() {
+        return questionIndex;
+    }
+    
+    /**
+     * Returns a consistent copy of a loaded player's stats, or null if the player's
+     * stats are not in memory.
+     */
+    public PlayerStatsSnapshot snapshot(UUID playerId) {
+        PlayerStatsShard shard = loadedShards.get(playerId);
+        return shard != null ? shard.snapshot() : null;
+    }
+    
+    /**
+     * Snapshots every player whose stats are in memory, for backups, leaderboards
+     * and exports. Costs a few pointer swaps per player. Each snapshot is consistent
+     * on its own; they are taken one after another, not at one instant.
+     */
+    public List<PlayerStatsSnapshot> snapshotLoadedPlayers() {
+        List<PlayerStatsSnapshot> snapshots = new ArrayList<>();
+        for (PlayerStatsShard shard : loadedShards.values()) {
+            snapshots.add(shard.snapshot());
+        }
+        return snapshots;
     }
     
     public StatsEntry getQuestionStats(UUID playerId, String question) {
-        Map<String, StatsEntry> playerMap = playerStats.getOrDefault(playerId, new HashMap<>());
-        return playerMap.getOrDefault(question, new StatsEntry());
+        PlayerStatsShard shard = loadedShards.get(playerId);
+        return shard != null ? shard.getQuestionStats(question) : new StatsEntry();
     }
     
     public Map<String, StatsEntry> getAllStats(UUID playerId) {
-        return playerStats.getOrDefault(playerId, new HashMap<>());
+        PlayerStatsShard shard = loadedShards.get(playerId);
+        return shard != null ? shard.getStats() : new HashMap<>();
     }
     
-    public float getOverallPercentCorrect(UUID playerId) {
-        Map<String, StatsEntry> playerMap = playerStats.getOrDefault(playerId, new HashMap<>());
-        if (playerMap.isEmpty()) {
-            return 0;
+    /**
+     * Returns the player's stats that changed since the version their client
+     * holds, and remembers that the client is now up to date, so later answers
+     * can be pushed with {@link #pushStats}.
+     */
+    public StatsDelta syncStats(UUID playerId, long clientEpoch, long clientVersion) {
+        StatsDelta delta = getShard(playerId).delta(clientEpoch, clientVersion);
+        clientStatsVersions.put(playerId, delta.getVersion());
+        return delta;
+    }
+    
+    /**
+     * Returns what changed since the player's client last synced, or null if it
+     * never asked for its stats or nothing changed.
+     */
+    public StatsDelta pushStats(UUID playerId) {
+        Long clientVersion = clientStatsVersions.get(playerId);
+        if (clientVersion == null) {
+            return null;
         }
-        
-        int totalCorrect = 0;
-        int totalAnswers = 0;
-        
-        for (StatsEntry entry : playerMap.values()) {
-            totalCorrect += entry.getTimesCorrect();
-            totalAnswers += entry.getTotal();
+        PlayerStatsShard shard = getShard(playerId);
+        StatsDelta delta = shard.delta(shard.getEpoch(), clientVersion);
+        if (delta.size() == 0) {
+            return null;
         }
-        
-        return totalAnswers > 0 ? (float) totalCorrect / totalAnswers * 100f : 0;
+        clientStatsVersions.put(playerId, delta.getVersion());
+        return delta;
+    }
+    
+    public float getOverallPercentCorrect(UUID playerId) {
+        PlayerStatsShard shard = loadedShards.get(playerId);
+        return shard != null ? shard.getOverallPercentCorrect() : 0;
     }
 }
@@ -0,0 +1,267 @@
+package bogget.studycraft;
+
+import java.util.Arrays;
+
+/**
+ * Spaced-repetition schedule for one player, using the SM-2 algorithm. Each
+ * answered question has an ease factor, a repetition count, an interval and a
+ * due time. A correct answer pushes the question further out; a wrong one brings
+ * it back within a minute and starts its intervals over.
+ *
+ * The card state is kept in primitive arrays indexed by question id:
+ *
+ * <pre>
+ * cards[id]  bits 63..48 ease factor in thousandths, bits 47..32 repetitions,
+ *            bits 31..0 interval in seconds (0 = never reviewed)
+ * due[id]    epoch seconds when the question is next due
+ * </pre>
+ *
+ * Picking the next card goes through an indexed min-heap of the current bank's
+ * reviewed questions keyed by due time, so both picking and rescheduling are
+ * O(log n). The heap is rebuilt when the bank changes and is never saved; only
+ * the card state is.
+ *
+ * Not thread-safe; {@link PlayerStatsShard} guards it with its own lock. Like
+ * {@link AnswerHistory}, {@link #freeze()} shares the arrays with a read-only view
+ * and the live schedule copies them before its next write.
+ */
+public class ReviewScheduler {
+    private static final int INITIAL_EASE = 2500;
+    private static final int MIN_EASE = 1300;
+    private static final int MAX_EASE = 0xFFFF;
+    private static final long RELEARN_SECONDS = 60;
+    private static final long FIRST_INTERVAL_SECONDS = 24 * 60 * 60;
+    private static final long SECOND_INTERVAL_SECONDS = 6 * FIRST_INTERVAL_SECONDS;
+    private static final long MAX_INTERVAL_SECONDS = 0xFFFFFFFFL;
+    // Correct answers faster than this count as "perfect" recall (SM-2 quality 5)
+    private static final int FAST_ANSWER_MS = 5000;
+
+    private long[] cards = new long[0];
+    private long[] due = new long[0];
+    // True while cards and due are shared with a frozen view
+    private boolean shared = false;
+    private final boolean frozen;
+
+    // Review queue for the current bank, built on the first pick
+    private QuestionBank bank;
+    // The bank's id mapping, shared with every other player's schedule
+    private QuestionBank.QuestionIds questionIds;
+    // Min-heap of bank indices by due time, and each bank index's heap slot (or -1)
+    private int[] heap;
+    private int[] heapSlots;
+    private int heapSize;
+    // Bank questions before this index have all been reviewed at least once
+    private int nextNewIndex;
+
+    public ReviewScheduler() {
+        this.frozen = false;
+    }
+
+    private ReviewScheduler(long[] cards, long[] due) {
+        this.cards = cards;
+        this.due = due;
+        this.frozen = true;
+    }
+
+    static long packCard(int ease, int repetitions, long intervalSeconds) {
+        return ((long) ease << 48) | ((long) repetitions << 32) | intervalSeconds;
+    }
+
+    static int easeOf(long card) {
+        return (int) (card >>> 48);
+    }
+
+    static int repetitionsOf(long card) {
+        return (int) ((card >>> 32) & 0xFFFF);
+    }
+
+    static long intervalOf(long card) {
+        return card & 0xFFFFFFFFL;
+    }
+
+    public boolean isReviewed(int questionId) {
+        return questionId >= 0 && questionId < cards.length && cards[questionId] != 0;
+    }
+
+    public long getCard(int questionId) {
+        return questionId >= 0 && questionId < cards.length ? cards[questionId] : 0;
+    }
+
+    public long getDueSeconds(int questionId) {
+        return questionId >= 0 && questionId < due.length ? due[questionId] : 0;
+    }
+
+    /**
+     * Reschedules a question after an answer.
+     */
+    public void review(int questionId, boolean correct, int latencyMs, long nowSeconds) {
+        long card = getCard(questionId);
+        int ease = card != 0 ? easeOf(card) : INITIAL_EASE;
+        int repetitions = card != 0 ? repetitionsOf(card) : 0;
+        long interval;
+
+        // SM-2 quality: 5 for a quick correct answer, 4 for a slow one, 1 for a wrong one
+        int quality = correct ? (latencyMs < FAST_ANSWER_MS ? 5 : 4) : 1;
+        int miss = 5 - quality;
+        ease = Math.min(MAX_EASE, Math.max(MIN_EASE, ease + 100 - miss * (80 + miss * 20)));
+
+        if (correct) {
+            repetitions = Math.min(repetitions + 1, 0xFFFF);
+            if (repetitions == 1) {
+                interval = FIRST_INTERVAL_SECONDS;
+            } else if (repetitions == 2) {
+                interval = SECOND_INTERVAL_SECONDS;
+            } else {
+                interval = Math.min(MAX_INTERVAL_SECONDS, intervalOf(card) * ease / 1000);
+            }
+        } else {
+            repetitions = 0;
+            interval = RELEARN_SECONDS;
+        }
+
+        set(questionId, packCard(ease, repetitions, interval), nowSeconds + interval);
+    }
+
+    /**
+     * Sets a question's state directly, as when loading it from disk.
+     */
+    public void set(int questionId, long card, long dueSeconds) {
+        if (frozen) {
+            throw new IllegalStateException("Frozen review schedule is read-only");
+        }
+        if (questionId >= cards.length) {
+            int capacity = Math.max(questionId + 1, cards.length * 2);
+            cards = Arrays.copyOf(cards, capacity);
+            due = Arrays.copyOf(due, capacity);
+            shared = false;
+        } else if (shared) {
+            cards = cards.clone();
+            due = due.clone();
+            shared = false;
+        }
+        cards[questionId] = card;
+        due[questionId] = dueSeconds;
+
+        int bankIndex = bank != null ? questionIds.bankIndexOf(questionId) : -1;
+        if (bankIndex >= 0) {
+            if (heapSlots[bankIndex] < 0) {
+                heapSlots[bankIndex] = heapSize;
+                heap[heapSize++] = bankIndex;
+            }
+            // The due time can move either way, so restore the heap in both directions
+            siftDown(siftUp(heapSlots[bankIndex]));
+        }
+    }
+
+    /**
+     * Returns the bank index of the card to ask next: the most overdue reviewed
+     * card if any is due, otherwise the next card never seen before, otherwise the
+     * card due soonest. Returns -1 if the bank is empty.
+     */
+    public int next(QuestionBank bank, QuestionIndex index, long nowSeconds) {
+        if (this.bank != bank) {
+            buildQueue(bank, index);
+        }
+
+        if (heapSize > 0 && dueAt(0) <= nowSeconds) {
+            return heap[0];
+        }
+        while (nextNewIndex < questionIds.size() && isReviewed(questionIds.idAt(nextNewIndex))) {
+            nextNewIndex++;
+        }
+        if (nextNewIndex < questionIds.size()) {
+            return nextNewIndex;
+        }
+        return heapSize > 0 ? heap[0] : -1;
+    }
+
+    /**
+     * Keeps the newer of two schedules for each question: state from {@code older}
+     * only fills in questions this one has not reviewed.
+     */
+    public void mergeOlder(ReviewScheduler older) {
+        for (int id = 0; id < older.cards.length; id++) {
+            if (older.cards[id] != 0 && !isReviewed(id)) {
+                set(id, older.cards[id], older.due[id]);
+            }
+        }
+    }
+
+    /**
+     * Returns a read-only view of the card state as it is now, in constant time.
+     */
+    public ReviewScheduler freeze() {
+        if (frozen) {
+            return this;
+        }
+        shared = true;
+        return new ReviewScheduler(cards, due);
+    }
+
+    // Heapifies the bank's reviewed questions in O(n), using the bank's shared id
+    // mapping so no question is looked up in the index again
+    private void buildQueue(QuestionBank bank, QuestionIndex index) {
+        questionIds = bank.getQuestionIds(index);
+        int size = questionIds.size();
+        heap = new int[size];
+        heapSlots = new int[size];
+        Arrays.fill(heapSlots, -1);
+        heapSize = 0;
+        for (int i = 0; i < size; i++) {
+            // A question listed twice is queued once, under its last bank index
+            int questionId = questionIds.idAt(i);
+            if (questionIds.bankIndexOf(questionId) == i && isReviewed(questionId)) {
+                heapSlots[i] = heapSize;
+                heap[heapSize++] = i;
+            }
+        }
+        for (int slot = heapSize / 2 - 1; slot >= 0; slot--) {
+            siftDown(slot);
+        }
+        nextNewIndex = 0;
+        this.bank = bank;
+    }
+
+    private long dueAt(int slot) {
+        return due[questionIds.idAt(heap[slot])];
+    }
+
+    private int siftUp(int slot) {
+        while (slot > 0) {
+            int parent = (slot - 1) / 2;
+            if (dueAt(parent) <= dueAt(slot)) {
+                break;
+            }
+            swap(slot, parent);
+            slot = parent;
+        }
+        return slot;
+    }
+
+    private void siftDown(int slot) {
+        while (true) {
+            int smallest = slot;
+            int left = slot * 2 + 1;
+            int right = left + 1;
+            if (left < heapSize && dueAt(left) < dueAt(smallest)) {
+                smallest = left;
+            }
+            if (right < heapSize && dueAt(right) < dueAt(smallest)) {
+                smallest = right;
+            }
+            if (smallest == slot) {
+                return;
+            }
+            swap(slot, smallest);
+            slot = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int bankIndex = heap[a];
+        heap[a] = heap[b];
+        heap[b] = bankIndex;
+        heapSlots[heap[a]] = a;
+        heapSlots[heap[b]] = b;
+    }
+}
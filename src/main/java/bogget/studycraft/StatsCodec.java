@@ -0,0 +1,239 @@
+package bogget.studycraft;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Versioned binary format for one player's quiz statistics. Players' stats are
+ * now saved as NBT (see {@link StatsNbt}); this format is still read from the
+ * {@code .stats} files and binary {@code .dat} files of earlier builds, which are
+ * converted on load.
+ *
+ * <pre>
+ * int     magic "SCST"
+ * varint  format version
+ * varint  string count, then per string: varint byte length + UTF-8 bytes
+ * varint  record count, then per record: varint question id, varint correct, varint wrong
+ * varint  history count, then per question: varint question id, varint n, n longs
+ *         (the {@link AnswerHistory} attempts, oldest first; version 2 and up)
+ * varint  schedule count, then per question: varint question id, long card state,
+ *         long due time (the {@link ReviewScheduler} state; version 3 and up)
+ * </pre>
+ *
+ * Each question text is stored once in the string table and records refer to it
+ * by index, so the file no longer repeats keys or carries JSON whitespace. Ids in
+ * the file are local to it and are mapped onto the server's {@link QuestionIndex}
+ * when decoding.
+ *
+ * A {@link StatsDelta} sent to a client is written with the same strings, counts
+ * and attempt lists, one entry at a time:
+ *
+ * <pre>
+ * long    epoch
+ * varlong version
+ * byte    1 if the delta is full, else 0
+ * varint  entry count, then per entry: varint question id (the server's),
+ *         byte 1 + string if the text is included else 0, varint correct,
+ *         varint wrong, varint n, n longs
+ * </pre>
+ *
+ * Entries decode straight into counts, so decoding costs the same however many
+ * answers they count. Deltas keep this varint layout rather than the per-question
+ * compounds of {@link StatsNbt}: they are sent on every answer while the stats
+ * view is open, and NBT would name every field in every entry.
+ */
+public final class StatsCodec {
+    private static final int MAGIC = 0x53435354; // "SCST"
+    public static final int VERSION = 3;
+
+    private StatsCodec() {}
+
+    /**
+     * Decodes packed counts indexed by the server's question ids, registering any
+     * question texts the index has not seen yet. Saved attempts are added to
+     * {@code history} and review state to {@code schedule}; older versions have
+     * none.
+     */
+    public static long[] decode(byte[] data, QuestionIndex index, AnswerHistory history, ReviewScheduler schedule) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a StudyCraft stats file");
+        }
+        int version = readVarInt(in);
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported stats format version " + version);
+        }
+
+        int stringCount = checkCount(readVarInt(in), in);
+        int[] globalIds = new int[stringCount];
+        int maxId = -1;
+        for (int i = 0; i < stringCount; i++) {
+            globalIds[i] = index.idOf(readString(in));
+            maxId = Math.max(maxId, globalIds[i]);
+        }
+
+        long[] counts = new long[maxId + 1];
+        int recordCount = checkCount(readVarInt(in), in);
+        for (int i = 0; i < recordCount; i++) {
+            int localId = readVarInt(in);
+            if (localId < 0 || localId >= stringCount) {
+                throw new IOException("Question id " + localId + " out of range");
+            }
+            counts[globalIds[localId]] = PlayerStatsShard.pack(readVarInt(in), readVarInt(in));
+        }
+
+        if (version >= 2) {
+            int historyCount = checkCount(readVarInt(in), in);
+            for (int i = 0; i < historyCount; i++) {
+                int localId = readVarInt(in);
+                if (localId < 0 || localId >= stringCount) {
+                    throw new IOException("Question id " + localId + " out of range");
+                }
+                for (long attempt : readAttempts(in)) {
+                    history.record(globalIds[localId], attempt);
+                }
+            }
+        }
+
+        if (version >= 3) {
+            int scheduledCount = checkCount(readVarInt(in), in);
+            for (int i = 0; i < scheduledCount; i++) {
+                int localId = readVarInt(in);
+                if (localId < 0 || localId >= stringCount) {
+                    throw new IOException("Question id " + localId + " out of range");
+                }
+                long card = in.readLong();
+                schedule.set(globalIds[localId], card, in.readLong());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Encodes a stats delta for {@link StudycraftNetworking#STATS_DATA_PACKET}.
+     */
+    public static byte[] encodeDelta(StatsDelta delta) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(24 + delta.size() * 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeLong(delta.getEpoch());
+            writeVarLong(out, delta.getVersion());
+            out.writeBoolean(delta.isFull());
+            writeVarInt(out, delta.size());
+            for (int i = 0; i < delta.size(); i++) {
+                writeVarInt(out, delta.getQuestionId(i));
+                String text = delta.getText(i);
+                out.writeBoolean(text != null);
+                if (text != null) {
+                    writeString(out, text);
+                }
+                writeVarInt(out, PlayerStatsShard.correctOf(delta.getCounts(i)));
+                writeVarInt(out, PlayerStatsShard.wrongOf(delta.getCounts(i)));
+                writeAttempts(out, delta.getAttempts(i));
+            }
+        } catch (IOException e) {
+            // Writing to a ByteArrayOutputStream cannot fail
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static StatsDelta decodeDelta(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        long epoch = in.readLong();
+        long version = readVarLong(in);
+        boolean full = in.readBoolean();
+        int size = checkCount(readVarInt(in), in);
+        int[] questionIds = new int[size];
+        String[] texts = new String[size];
+        long[] counts = new long[size];
+        long[][] attempts = new long[size][];
+        for (int i = 0; i < size; i++) {
+            questionIds[i] = readVarInt(in);
+            texts[i] = in.readBoolean() ? readString(in) : null;
+            counts[i] = PlayerStatsShard.pack(readVarInt(in), readVarInt(in));
+            attempts[i] = readAttempts(in);
+        }
+        return new StatsDelta(epoch, version, full, questionIds, texts, counts, attempts);
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[checkCount(readVarInt(in), in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Attempts at one question, oldest first: varint n, then n longs
+    private static void writeAttempts(DataOutputStream out, long[] attempts) throws IOException {
+        writeVarInt(out, attempts.length);
+        for (long attempt : attempts) {
+            out.writeLong(attempt);
+        }
+    }
+
+    private static long[] readAttempts(DataInputStream in) throws IOException {
+        long[] attempts = new long[checkCount(readVarInt(in), in)];
+        for (int i = 0; i < attempts.length; i++) {
+            attempts[i] = in.readLong();
+        }
+        return attempts;
+    }
+
+    // Every counted item takes at least a byte, so a count past the bytes left means bad data
+    private static int checkCount(int count, DataInputStream in) throws IOException {
+        if (count < 0 || count > in.available()) {
+            throw new IOException("Bad count " + count + " in stats data");
+        }
+        return count;
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarInt too long");
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarLong too long");
+    }
+}
@@ -0,0 +1,80 @@
+package bogget.studycraft;
+
+/**
+ * The question stats of one player that changed since a given version, as sent
+ * in {@link StudycraftNetworking#STATS_DATA_PACKET} (encoded by
+ * {@link StatsCodec#encodeDelta}). Questions are referred to
+ * by their {@link QuestionIndex} id, and the question text is only included the
+ * first time the client could need it.
+ *
+ * A delta belongs to one epoch of a player's stats (see
+ * {@link PlayerStatsShard#getEpoch()}). A full delta replaces everything the
+ * client has; any other delta only applies on top of the stats at the epoch and
+ * version the client asked from.
+ */
+public class StatsDelta {
+    private final long epoch;
+    private final long version;
+    private final boolean full;
+    private final int[] questionIds;
+    // Null where the client already has the text
+    private final String[] texts;
+    // Packed as in PlayerStatsShard: correct answers in the high 32 bits, wrong in the low
+    private final long[] counts;
+    private final long[][] attempts;
+
+    public StatsDelta(long epoch, long version, boolean full, int[] questionIds, String[] texts, long[] counts, long[][] attempts) {
+        this.epoch = epoch;
+        this.version = version;
+        this.full = full;
+        this.questionIds = questionIds;
+        this.texts = texts;
+        this.counts = counts;
+        this.attempts = attempts;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * The version of the stats the client has once this delta is applied.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public int size() {
+        return questionIds.length;
+    }
+
+    public int getQuestionId(int i) {
+        return questionIds[i];
+    }
+
+    /**
+     * Returns the question's text, or null if the client should already have it.
+     */
+    public String getText(int i) {
+        return texts[i];
+    }
+
+    /**
+     * Returns the question's counts, packed as in {@link PlayerStatsShard}.
+     */
+    public long getCounts(int i) {
+        return counts[i];
+    }
+
+    public long[] getAttempts(int i) {
+        return attempts[i];
+    }
+
+    public QuizStatistics.StatsEntry getEntry(int i) {
+        return QuizStatistics.StatsEntry.of(counts[i], attempts[i]);
+    }
+}
@@ -0,0 +1,92 @@
+package bogget.studycraft;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+
+import java.io.IOException;
+
+/**
+ * The NBT form of one player's quiz statistics, as saved in their {@code <uuid>.dat}
+ * file:
+ *
+ * <pre>
+ * Format     int, {@link #FORMAT}
+ * Questions  list, one compound per answered question:
+ *   Question   string, the question text
+ *   Correct    int
+ *   Wrong      int
+ *   Attempts   long[], the {@link AnswerHistory} attempts, oldest first
+ *   Card, Due  long, the {@link ReviewScheduler} state; only if it was reviewed
+ * </pre>
+ *
+ * Questions are stored by text, since ids are only stable within one server run.
+ */
+public final class StatsNbt {
+    public static final int FORMAT = 1;
+
+    private StatsNbt() {}
+
+    /**
+     * Builds the NBT for packed counts (see {@link PlayerStatsShard#pack}) indexed
+     * by question id, along with the recent attempts at and review schedule of
+     * each answered question.
+     */
+    public static NbtCompound write(long[] counts, AnswerHistory history, ReviewScheduler schedule, QuestionIndex index) {
+        NbtList questions = new NbtList();
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] == 0) {
+                continue;
+            }
+            NbtCompound question = new NbtCompound();
+            question.putString("Question", index.textOf(id));
+            question.putInt("Correct", PlayerStatsShard.correctOf(counts[id]));
+            question.putInt("Wrong", PlayerStatsShard.wrongOf(counts[id]));
+            question.putLongArray("Attempts", history.getAttempts(id));
+            if (schedule.isReviewed(id)) {
+                question.putLong("Card", schedule.getCard(id));
+                question.putLong("Due", schedule.getDueSeconds(id));
+            }
+            questions.add(question);
+        }
+
+        NbtCompound nbt = new NbtCompound();
+        nbt.putInt("Format", FORMAT);
+        nbt.put("Questions", questions);
+        return nbt;
+    }
+
+    /**
+     * Reads packed counts indexed by the server's question ids, registering any
+     * question texts the index has not seen yet. Saved attempts are added to
+     * {@code history} and review state to {@code schedule}.
+     */
+    public static long[] read(NbtCompound nbt, QuestionIndex index, AnswerHistory history, ReviewScheduler schedule) throws IOException {
+        int format = nbt.getInt("Format");
+        if (format < 1 || format > FORMAT) {
+            throw new IOException("Unsupported stats format " + format);
+        }
+
+        NbtList questions = nbt.getList("Questions", NbtElement.COMPOUND_TYPE);
+        int[] ids = new int[questions.size()];
+        int maxId = -1;
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = index.idOf(questions.getCompound(i).getString("Question"));
+            maxId = Math.max(maxId, ids[i]);
+        }
+
+        long[] counts = new long[maxId + 1];
+        for (int i = 0; i < ids.length; i++) {
+            NbtCompound question = questions.getCompound(i);
+            int id = ids[i];
+            counts[id] = PlayerStatsShard.pack(question.getInt("Correct"), question.getInt("Wrong"));
+            for (long attempt : question.getLongArray("Attempts")) {
+                history.record(id, attempt);
+            }
+            if (question.contains("Card", NbtElement.LONG_TYPE)) {
+                schedule.set(id, question.getLong("Card"), question.getLong("Due"));
+            }
+        }
+        return counts;
+    }
+}
@@ -15,21 +15,53 @@ import org.apache.logging.log4j.core.jmx.Server;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CompletableFuture;
+
 public class Studycraft implements ModInitializer {
     public static final String MOD_ID = "studycraft";
     public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
 
+    // Start with -Dstudycraft.debugStats=true to cross-check running stat totals against the full data
+    public static final boolean DEBUG_STATS = Boolean.getBoolean("studycraft.debugStats");
+
     private static QuizStatistics quizStatistics;
+    private static DeckRegistry deckRegistry;
+    private static QuizPacketPool quizPacketPool;
+    private static DeckUploads deckUploads;
+    private static DeckSync deckSync;
+    private static QuizSessions quizSessions;
     private static ClientStatistics clientStatistics = new ClientStatistics();
 
     // Server configuration variables
     private static int serverHungerInterval = 40; // Default: 2 seconds (40 ticks)
     private static int serverHungerGain = 4; // Default: 2 hunger points (1 drumstick)
+    private static QuestionSelection serverQuestionSelection = QuestionSelection.SPACED_REPETITION;
+    private static AnswerMode serverAnswerMode = AnswerMode.MULTIPLE_CHOICE;
 
     public static QuizStatistics getQuizStatistics() {
         return quizStatistics;
     }
 
+    public static DeckRegistry getDeckRegistry() {
+        return deckRegistry;
+    }
+
+    public static QuizPacketPool getQuizPacketPool() {
+        return quizPacketPool;
+    }
+
+    public static DeckUploads getDeckUploads() {
+        return deckUploads;
+    }
+
+    public static DeckSync getDeckSync() {
+        return deckSync;
+    }
+
+    public static QuizSessions getQuizSessions() {
+        return quizSessions;
+    }
+
     public static ClientStatistics getClientStats() {
         if (clientStatistics == null) {
             clientStatistics = new ClientStatistics();
@@ -37,9 +69,19 @@ public class Studycraft implements ModInitializer {
         return clientStatistics;
     }
 
-    public static void updateQuestionBank(String newContent) {
-        // Set the new content and reload questions
-        QuestionBank newQuestionBank = new QuestionBank(newContent);
+    /**
+     * Returns the text of the default deck, for the config screen's editor.
+     */
+    public static String getDefaultDeckText() {
+        DeckRegistry decks = deckRegistry;
+        return decks != null ? decks.getDefaultDeckText() : DeckRegistry.BUILT_IN_DECK;
+    }
+    
+    /**
+     * Makes an already parsed bank the active one. Server thread; register the
+     * bank's questions where it was parsed.
+     */
+    public static void installQuestionBank(QuestionBank newQuestionBank) {
         setQuestionBank(newQuestionBank);
         LOGGER.info("Question bank updated with {} questions", newQuestionBank.getQuestionCount());
     }
@@ -63,6 +105,24 @@ public class Studycraft implements ModInitializer {
         LOGGER.info("Server hunger gain set to {} points ({} drumsticks)", gain, gain / 2.0);
     }
     
+    public static QuestionSelection getServerQuestionSelection() {
+        return serverQuestionSelection;
+    }
+    
+    public static void setServerQuestionSelection(QuestionSelection selection) {
+        serverQuestionSelection = selection;
+        LOGGER.info("Server question selection set to {}", selection.getLabel());
+    }
+    
+    public static AnswerMode getServerAnswerMode() {
+        return serverAnswerMode;
+    }
+    
+    public static void setServerAnswerMode(AnswerMode answerMode) {
+        serverAnswerMode = answerMode;
+        LOGGER.info("Server answer mode set to {}", answerMode.getLabel());
+    }
+    
     private static QuestionBank questionBank;
     private int tickCounter = 0;
     private final int HUNGER_INTERVAL = 40; // 2 seconds (20 ticks per second)
@@ -83,18 +143,46 @@ public class Studycraft implements ModInitializer {
         LOGGER.info("Initializing StudyCraft mod");
 
         // Initialize the question bank
-        questionBank = new QuestionBank();
+        questionBank = new QuestionBank(DeckRegistry.BUILT_IN_DECK);
         LOGGER.info("Loaded {} questions from question bank", questionBank.getQuestionCount());
 
         ServerLifecycleEvents.SERVER_STARTED.register(server -> {
-            quizStatistics = new QuizStatistics(server);
+            quizStatistics = QuizStatistics.getOrCreate(server);
             LOGGER.info("Initialized quiz statistics");
+            deckRegistry = new DeckRegistry(server);
+            quizPacketPool = new QuizPacketPool();
+            deckUploads = new DeckUploads();
+            deckSync = new DeckSync();
+            quizSessions = new QuizSessions();
+        });
+
+        // The final world save has already queued the stats writes by now
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            if (quizStatistics != null) {
+                quizStatistics.close();
+                quizStatistics = null;
+            }
+            if (deckRegistry != null) {
+                deckRegistry.close();
+                deckRegistry = null;
+            }
+            if (quizPacketPool != null) {
+                quizPacketPool.close();
+                quizPacketPool = null;
+            }
+            if (deckUploads != null) {
+                deckUploads.close();
+                deckUploads = null;
+            }
+            deckSync = null;
+            quizSessions = null;
         });
 
         // Register our item
         Registry.register(Registries.ITEM, new Identifier(MOD_ID, "quiz_card"), QUIZ_ITEM);
         
         StudycraftNetworking.registerHandlers();
+        StudycraftCommands.register();
         // Register server start event to send welcome message
         ServerLifecycleEvents.SERVER_STARTED.register(server -> {
             LOGGER.info("StudyCraft server started!");
@@ -103,14 +191,60 @@ public class Studycraft implements ModInitializer {
         // Send message to player when they join
         net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
             ServerPlayerEntity player = handler.player;
+            if (quizStatistics != null) {
+                String playerName = player.getName().getString();
+                quizStatistics.loadPlayer(player.getUuid(),
+                    () -> LOGGER.info("Loaded quiz statistics for {}", playerName));
+            }
+            // Lets the client check its deck cache before the first quiz card
+            if (deckSync != null) {
+                deckSync.announce(player, deckRegistry != null ? deckRegistry.getBank(player) : questionBank);
+            }
             player.sendMessage(Text.literal("§6[StudyCraft]§r Welcome! Your hunger will deplete every " + 
                 (serverHungerInterval / 20.0) + " seconds. Use quiz cards to earn food!"), false);
-            player.sendMessage(Text.literal("§6[StudyCraft]§r Loaded " + questionBank.getQuestionCount() + " study questions."), false);
+            // Counts the deck the player is assigned, once it has loaded
+            CompletableFuture<QuestionBank> playerBank = deckRegistry != null
+                ? deckRegistry.playerJoined(player)
+                : CompletableFuture.completedFuture(questionBank);
+            playerBank.thenAccept(bank -> {
+                if (!player.isDisconnected()) {
+                    player.sendMessage(Text.literal("§6[StudyCraft]§r Loaded " + bank.getQuestionCount() + " study questions."), false);
+                }
+            });
             LOGGER.info("Player {} joined with StudyCraft active", player.getName().getString());
         });
         
+        // Save and evict the player's stats when they leave
+        net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+            // Stops refills first, so nothing picks cards for the player once their stats are gone
+            if (quizPacketPool != null) {
+                quizPacketPool.remove(handler.player.getUuid());
+            }
+            if (quizStatistics != null) {
+                quizStatistics.unloadPlayer(handler.player.getUuid());
+            }
+            // Drops the player's deck from memory if nobody else online uses it
+            if (deckRegistry != null) {
+                deckRegistry.playerLeft(handler.player.getUuid());
+            }
+            if (deckUploads != null) {
+                deckUploads.remove(handler.player.getUuid());
+            }
+            if (deckSync != null) {
+                deckSync.remove(handler.player.getUuid());
+            }
+            if (quizSessions != null) {
+                quizSessions.remove(handler.player.getUuid());
+            }
+        });
+        
         // Register server tick event to handle hunger depletion
         ServerTickEvents.END_SERVER_TICK.register(server -> {
+            // Expires quiz cards nobody answered
+            if (quizSessions != null) {
+                quizSessions.tick();
+            }
+            
             tickCounter++;
             
             // Use the configurable hunger interval instead of hardcoded value
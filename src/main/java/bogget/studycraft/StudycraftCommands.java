@@ -0,0 +1,139 @@
+package bogget.studycraft;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.argument.EntityArgumentType;
+import net.minecraft.command.argument.TeamArgumentType;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.Text;
+
+import java.util.Collection;
+import java.util.Map;
+
+import static net.minecraft.server.command.CommandManager.argument;
+import static net.minecraft.server.command.CommandManager.literal;
+
+/**
+ * Operator commands for managing decks:
+ *
+ * <pre>
+ * /studycraft deck list
+ * /studycraft deck assign player &lt;targets&gt; &lt;deck&gt;
+ * /studycraft deck assign team &lt;team&gt; &lt;deck&gt;
+ * /studycraft deck clear player &lt;targets&gt;
+ * /studycraft deck clear team &lt;team&gt;
+ * </pre>
+ */
+public class StudycraftCommands {
+    public static void register() {
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> registerDeckCommands(dispatcher));
+    }
+
+    private static void registerDeckCommands(CommandDispatcher<ServerCommandSource> dispatcher) {
+        dispatcher.register(literal("studycraft")
+            .requires(source -> source.hasPermissionLevel(2))
+            .then(literal("deck")
+                .then(literal("list")
+                    .executes(StudycraftCommands::listDecks))
+                .then(literal("assign")
+                    .then(literal("player")
+                        .then(argument("targets", EntityArgumentType.players())
+                            .then(argument("deck", StringArgumentType.word())
+                                .suggests((context, builder) -> CommandSource.suggestMatching(getDecks(context).listDecks(), builder))
+                                .executes(StudycraftCommands::assignPlayers))))
+                    .then(literal("team")
+                        .then(argument("team", TeamArgumentType.team())
+                            .then(argument("deck", StringArgumentType.word())
+                                .suggests((context, builder) -> CommandSource.suggestMatching(getDecks(context).listDecks(), builder))
+                                .executes(StudycraftCommands::assignTeam)))))
+                .then(literal("clear")
+                    .then(literal("player")
+                        .then(argument("targets", EntityArgumentType.players())
+                            .executes(StudycraftCommands::clearPlayers)))
+                    .then(literal("team")
+                        .then(argument("team", TeamArgumentType.team())
+                            .executes(StudycraftCommands::clearTeam))))));
+    }
+
+    private static DeckRegistry getDecks(CommandContext<ServerCommandSource> context) {
+        // Commands only run while the server is up, after SERVER_STARTED has made the registry
+        return Studycraft.getDeckRegistry();
+    }
+
+    private static int listDecks(CommandContext<ServerCommandSource> context) {
+        DeckRegistry decks = getDecks(context);
+        Map<String, Integer> loaded = decks.getLoadedDecks();
+        StringBuilder message = new StringBuilder("§6[StudyCraft]§r Decks in ").append(decks.getDeckDir()).append(':');
+        for (String name : decks.listDecks()) {
+            message.append("\n - ").append(name);
+            Integer users = loaded.get(name);
+            if (users != null) {
+                message.append(" (loaded, ").append(users).append(" player(s))");
+            }
+        }
+        for (Map.Entry<String, String> entry : decks.getAssignments().getTeamDecks().entrySet()) {
+            message.append("\nTeam ").append(entry.getKey()).append(" -> ").append(entry.getValue());
+        }
+        context.getSource().sendFeedback(() -> Text.literal(message.toString()), false);
+        return 1;
+    }
+
+    private static int assignPlayers(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        String deck = StringArgumentType.getString(context, "deck");
+        DeckRegistry decks = getDecks(context);
+        if (!decks.exists(deck)) {
+            context.getSource().sendError(Text.literal("Unknown deck: " + deck));
+            return 0;
+        }
+        Collection<ServerPlayerEntity> players = EntityArgumentType.getPlayers(context, "targets");
+        for (ServerPlayerEntity player : players) {
+            decks.getAssignments().assignPlayer(player.getUuid(), deck);
+            // Start loading the deck now rather than on the next quiz card
+            decks.playerJoined(player);
+        }
+        context.getSource().sendFeedback(() -> Text.literal("§6[StudyCraft]§r Assigned deck " + deck + " to " + players.size() + " player(s)"), true);
+        return players.size();
+    }
+
+    private static int assignTeam(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        String deck = StringArgumentType.getString(context, "deck");
+        DeckRegistry decks = getDecks(context);
+        if (!decks.exists(deck)) {
+            context.getSource().sendError(Text.literal("Unknown deck: " + deck));
+            return 0;
+        }
+        Team team = TeamArgumentType.getTeam(context, "team");
+        decks.getAssignments().assignTeam(team.getName(), deck);
+        context.getSource().sendFeedback(() -> Text.literal("§6[StudyCraft]§r Assigned deck " + deck + " to team " + team.getName()), true);
+        return 1;
+    }
+
+    private static int clearPlayers(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        DeckRegistry decks = getDecks(context);
+        int cleared = 0;
+        for (ServerPlayerEntity player : EntityArgumentType.getPlayers(context, "targets")) {
+            if (decks.getAssignments().clearPlayer(player.getUuid())) {
+                cleared++;
+            }
+        }
+        int count = cleared;
+        context.getSource().sendFeedback(() -> Text.literal("§6[StudyCraft]§r Cleared the deck of " + count + " player(s)"), true);
+        return count;
+    }
+
+    private static int clearTeam(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        Team team = TeamArgumentType.getTeam(context, "team");
+        if (!getDecks(context).getAssignments().clearTeam(team.getName())) {
+            context.getSource().sendError(Text.literal("Team " + team.getName() + " has no deck"));
+            return 0;
+        }
+        context.getSource().sendFeedback(() -> Text.literal("§6[StudyCraft]§r Cleared the deck of team " + team.getName()), true);
+        return 1;
+    }
+}
@@ -33,6 +33,8 @@ public class StudycraftConfigScreen extends Screen {
     private static int persistentHungerInterval = 40; // Default 2 seconds (40 ticks)
     private static int persistentHungerGain = 2; // Default 2 hunger points (1 drumstick)
     private static int persistentDifficultyIndex = 1; // Default to Normal
+    private static QuestionSelection persistentQuestionSelection = QuestionSelection.SPACED_REPETITION;
+    private static AnswerMode persistentAnswerMode = AnswerMode.MULTIPLE_CHOICE;
     
     // Instance fields that sync with persistent state
     private int currentHungerInterval;
@@ -91,7 +93,7 @@ public class StudycraftConfigScreen extends Screen {
         super(Text.literal("StudyCraft Configuration"));
         this.parent = parent;
         // Initialize with the actual raw content
-        this.rawQuestionBankContent = QuestionBank.RAW_QUESTION_BANK;
+        this.rawQuestionBankContent = Studycraft.getDefaultDeckText();
         
         // Load current difficulty settings from the game state
         loadCurrentDifficultySettings();
@@ -155,8 +157,40 @@ public class StudycraftConfigScreen extends Screen {
         .tooltip(Tooltip.of(createHungerGainTooltip()))
         .build();
         
+        // Question selection button - left of hunger loss
+        ButtonWidget selectionButton = ButtonWidget.builder(
+            Text.literal("Questions: " + persistentQuestionSelection.getLabel()),
+            (button) -> {
+                persistentQuestionSelection = persistentQuestionSelection.next();
+                StudycraftNetworking.sendDifficultyUpdatePacket(currentHungerInterval, currentHungerGain, persistentQuestionSelection, persistentAnswerMode);
+                // Refresh the screen to update button text and tooltip
+                clearChildren();
+                init();
+            }
+        )
+        .dimensions(width - buttonWidth * 3 - spacing * 2 - 10, 10, buttonWidth, buttonHeight)
+        .tooltip(Tooltip.of(Text.literal(persistentQuestionSelection.getDescription() + "\n\nClick to cycle through modes")))
+        .build();
+        
+        // Answer mode button - bottom row, left of Done, since the top row is full
+        ButtonWidget answerModeButton = ButtonWidget.builder(
+            Text.literal("Answers: " + persistentAnswerMode.getLabel()),
+            (button) -> {
+                persistentAnswerMode = persistentAnswerMode.next();
+                StudycraftNetworking.sendDifficultyUpdatePacket(currentHungerInterval, currentHungerGain, persistentQuestionSelection, persistentAnswerMode);
+                // Refresh the screen to update button text and tooltip
+                clearChildren();
+                init();
+            }
+        )
+        .dimensions(width / 2 - 75 - spacing - buttonWidth, height - 30, buttonWidth, buttonHeight)
+        .tooltip(Tooltip.of(Text.literal(persistentAnswerMode.getDescription() + "\n\nClick to cycle through modes")))
+        .build();
+        
         addDrawableChild(hungerIntervalButton);
         addDrawableChild(hungerGainButton);
+        addDrawableChild(selectionButton);
+        addDrawableChild(answerModeButton);
     }
     
     private void cycleDifficulty() {
@@ -174,7 +208,7 @@ public class StudycraftConfigScreen extends Screen {
         persistentDifficultyIndex = currentDifficultyIndex;
         
         // Send the new settings to the server
-        StudycraftNetworking.sendDifficultyUpdatePacket(currentHungerInterval, currentHungerGain);
+        StudycraftNetworking.sendDifficultyUpdatePacket(currentHungerInterval, currentHungerGain, persistentQuestionSelection, persistentAnswerMode);
         
         // Send chat message about difficulty change
         if (client.player != null) {
@@ -258,7 +292,7 @@ public class StudycraftConfigScreen extends Screen {
             (button) -> {
                 showingStats = false;
                 // Refresh the raw content from the current question bank
-                rawQuestionBankContent = QuestionBank.RAW_QUESTION_BANK;
+                rawQuestionBankContent = Studycraft.getDefaultDeckText();
                 clearChildren();
                 init();
             }
@@ -497,6 +531,13 @@ public class StudycraftConfigScreen extends Screen {
             String statsText = String.format("✓ %d  ✗ %d  (%.1f%%)", 
                 stats.getTimesCorrect(), stats.getTimesWrong(), stats.getPercentCorrect());
             
+            // Recent attempts and average answer time
+            int recentCount = stats.getRecentAttempts().length;
+            if (recentCount > 0) {
+                statsText += String.format("  last %d: %d✓ %.1fs", 
+                    recentCount, stats.getRecentCorrect(), stats.getAverageLatencyMs() / 1000f);
+            }
+            
             context.drawTextWithShadow(textRenderer, Text.literal(statsText), 
                 width / 2 + 5, y, 0xAAAAAA);
             
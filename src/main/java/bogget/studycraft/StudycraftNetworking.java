@@ -4,6 +4,7 @@ import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 import net.fabricmc.fabric.api.networking.v1.PacketByteBufs;
 import net.fabricmc.fabric.api.networking.v1.PacketSender;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.util.Identifier;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.Text;
@@ -17,10 +18,12 @@ import net.minecraft.sound.SoundCategory;
 import net.minecraft.item.ItemStack;
 import net.minecraft.item.Items;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public class StudycraftNetworking {
     // Define packet identifiers
@@ -31,6 +34,26 @@ public class StudycraftNetworking {
     public static final Identifier STATS_DATA_PACKET = new Identifier(Studycraft.MOD_ID, "stats_data");
     public static final Identifier GIVE_ITEM_PACKET = new Identifier(Studycraft.MOD_ID, "give_item");
     public static final Identifier DIFFICULTY_UPDATE_PACKET = new Identifier(Studycraft.MOD_ID, "difficulty_update");
+    public static final Identifier SUBMIT_TYPED_ANSWER_PACKET = new Identifier(Studycraft.MOD_ID, "submit_typed_answer");
+    public static final Identifier ANSWER_RESULT_PACKET = new Identifier(Studycraft.MOD_ID, "answer_result");
+    public static final Identifier DECK_UPLOAD_PROGRESS_PACKET = new Identifier(Studycraft.MOD_ID, "deck_upload_progress");
+    public static final Identifier DECK_HASH_PACKET = new Identifier(Studycraft.MOD_ID, "deck_hash");
+    public static final Identifier DECK_STATUS_PACKET = new Identifier(Studycraft.MOD_ID, "deck_status");
+    public static final Identifier DECK_DATA_PACKET = new Identifier(Studycraft.MOD_ID, "deck_data");
+    
+    // Longest typed answer the server will grade
+    private static final int MAX_TYPED_ANSWER_LENGTH = 256;
+    
+    // Client-side id of the last question bank upload, so the server can tell a new upload from the rest of an old one
+    private static int lastTransferId = 0;
+    
+    // Compressed deck bytes per DECK_DATA packet, well inside the 1 MiB server payload limit
+    private static final int DECK_DATA_CHUNK_SIZE = 512 * 1024;
+    // SHA-256
+    private static final int DECK_HASH_LENGTH = 32;
+    
+    // Client-side cache of decks by hash, made on first use
+    private static ClientDeckCache clientDeckCache;
     
     // Register all networking handlers
     public static void registerHandlers() {
@@ -40,6 +63,8 @@ public class StudycraftNetworking {
         ServerPlayNetworking.registerGlobalReceiver(REQUEST_STATS_PACKET, StudycraftNetworking::handleRequestStatsPacket);
         ServerPlayNetworking.registerGlobalReceiver(GIVE_ITEM_PACKET, StudycraftNetworking::handleGiveItemPacket);
         ServerPlayNetworking.registerGlobalReceiver(DIFFICULTY_UPDATE_PACKET, StudycraftNetworking::handleDifficultyUpdatePacket);
+        ServerPlayNetworking.registerGlobalReceiver(SUBMIT_TYPED_ANSWER_PACKET, StudycraftNetworking::handleSubmitTypedAnswerPacket);
+        ServerPlayNetworking.registerGlobalReceiver(DECK_STATUS_PACKET, StudycraftNetworking::handleDeckStatusPacket);
     }
     
     // Client-side init method that should be called from StudycraftClient
@@ -47,19 +72,84 @@ public class StudycraftNetworking {
         // Register client-side handlers
         ClientPlayNetworking.registerGlobalReceiver(OPEN_QUIZ_PACKET, StudycraftNetworking::handleOpenQuizPacket);
         ClientPlayNetworking.registerGlobalReceiver(STATS_DATA_PACKET, StudycraftNetworking::handleStatsDataPacket);
+        ClientPlayNetworking.registerGlobalReceiver(ANSWER_RESULT_PACKET, StudycraftNetworking::handleAnswerResultPacket);
+        ClientPlayNetworking.registerGlobalReceiver(DECK_UPLOAD_PROGRESS_PACKET, StudycraftNetworking::handleDeckUploadProgressPacket);
+        ClientPlayNetworking.registerGlobalReceiver(DECK_HASH_PACKET, StudycraftNetworking::handleDeckHashPacket);
+        ClientPlayNetworking.registerGlobalReceiver(DECK_DATA_PACKET, StudycraftNetworking::handleDeckDataPacket);
     }
     
     // Method to send packet to open quiz on client
     public static void sendOpenQuizPacket(ServerPlayerEntity player) {
-        // Get a random question from the question bank
-        QuestionBank.QuizData quizData = Studycraft.getQuestionBank().getRandomQuestion();
+        // The server remembers the card, so the answer only needs to name it. Checked
+        // first, so a pre-generated card is never taken only to be thrown away
+        QuizSessions sessions = Studycraft.getQuizSessions();
+        if (sessions == null) {
+            return;
+        }
+        
+        // The player's deck and the selection mode are resolved here; picking the card can happen elsewhere
+        DeckRegistry decks = Studycraft.getDeckRegistry();
+        QuestionBank bank = decks != null ? decks.getBank(player) : Studycraft.getQuestionBank();
+        QuestionSelection selection = Studycraft.getServerQuestionSelection();
+        UUID playerId = player.getUuid();
+        
+        // Lets the client cache the deck, if it does not know it yet
+        DeckSync sync = Studycraft.getDeckSync();
+        if (sync != null) {
+            sync.announce(player, bank);
+        }
+        
+        // Usually pre-generated off the server thread, after the player's last answer
+        QuizPacketPool pool = Studycraft.getQuizPacketPool();
+        QuizPacketPool.Card card = pool != null
+            ? pool.take(playerId, bank, selection, () -> encodeQuizCard(playerId, bank, selection))
+            : encodeQuizCard(playerId, bank, selection);
+        
+        // Not part of the pooled card, so switching modes never waits on a refill
+        boolean typed = Studycraft.getServerAnswerMode() == AnswerMode.TYPED;
+        QuizSessions.Session session = sessions.open(playerId, bank, card.getQuizData(), typed);
+        
+        PacketByteBuf buf = PacketByteBufs.create();
+        buf.writeBytes(card.getPayload());
+        buf.writeVarInt(session.getId());
+        buf.writeBoolean(typed);
+        ServerPlayNetworking.send(player, OPEN_QUIZ_PACKET, buf);
+    }
+    
+    // Picks the player's next question in the given selection mode and encodes it as an OPEN_QUIZ payload. Thread-safe.
+    private static QuizPacketPool.Card encodeQuizCard(UUID playerId, QuestionBank bank, QuestionSelection selection) {
+        QuizStatistics stats = Studycraft.getQuizStatistics();
+        int questionIndex = -1;
+        if (stats != null) {
+            switch (selection) {
+                case ADAPTIVE -> questionIndex = stats.pickQuestion(playerId, bank);
+                case SPACED_REPETITION -> questionIndex = stats.nextDueQuestion(playerId, bank);
+                case RANDOM -> {}
+            }
+        }
+        QuestionBank.QuizData quizData = questionIndex >= 0 ? bank.getQuestion(questionIndex) : bank.getRandomQuestion();
         
         PacketByteBuf buf = PacketByteBufs.create();
         
-        // Write the question data to the packet
+        DeckSync sync = Studycraft.getDeckSync();
+        if (sync != null && sync.isReady(playerId, bank) && quizData.getAnswerIds() != null) {
+            // The client has this deck cached, so ids are enough
+            buf.writeBoolean(true);
+            buf.writeVarInt(quizData.getQuestionIndex());
+            int[] answerIds = quizData.getAnswerIds();
+            buf.writeVarInt(answerIds.length);
+            for (int answerId : answerIds) {
+                // Shifted so a default option (-1) fits
+                buf.writeVarInt(answerId + 1);
+            }
+            byte[] payload = new byte[buf.readableBytes()];
+            buf.readBytes(payload);
+            return new QuizPacketPool.Card(quizData, payload);
+        }
+        buf.writeBoolean(false);
+        
+        // Write the question data to the packet; which answer is right stays on the server
         buf.writeString(quizData.getQuestion());
-        buf.writeString(quizData.getCorrectAnswer());
-        buf.writeInt(quizData.getCorrectIndex());
         
         // Write all answers
         List<String> answers = quizData.getAllAnswers();
@@ -68,7 +158,9 @@ public class StudycraftNetworking {
             buf.writeString(answer);
         }
         
-        ServerPlayNetworking.send(player, OPEN_QUIZ_PACKET, buf);
+        byte[] payload = new byte[buf.readableBytes()];
+        buf.readBytes(payload);
+        return new QuizPacketPool.Card(quizData, payload);
     }
     
     // Client-side handler for opening quiz screen
@@ -76,10 +168,29 @@ public class StudycraftNetworking {
                                         ClientPlayNetworkHandler handler,
                                         PacketByteBuf buf, 
                                         PacketSender responseSender) {
+        if (buf.readBoolean()) {
+            // A compact card: ids into the deck the server knows we have cached
+            int questionIndex = buf.readVarInt();
+            int[] answerIds = new int[buf.readVarInt()];
+            for (int i = 0; i < answerIds.length; i++) {
+                answerIds[i] = buf.readVarInt() - 1;
+            }
+            int sessionId = buf.readVarInt();
+            boolean typed = buf.readBoolean();
+            
+            client.execute(() -> {
+                QuestionBank.QuizData quizData = decodeCompactCard(getClientDeckCache(client).getActive(), questionIndex, answerIds);
+                if (quizData == null) {
+                    Studycraft.LOGGER.warn("Received a quiz card for question {}, which is not in the cached deck", questionIndex);
+                    return;
+                }
+                client.setScreen(new QuizScreen(quizData, sessionId, typed));
+            });
+            return;
+        }
+        
         // Read the question data from the packet
         String question = buf.readString();
-        String correctAnswer = buf.readString();
-        int correctIndex = buf.readInt();
         
         // Read all answers
         int answerCount = buf.readInt();
@@ -87,110 +198,426 @@ public class StudycraftNetworking {
         for (int i = 0; i < answerCount; i++) {
             answers.add(buf.readString());
         }
+        int sessionId = buf.readVarInt();
+        boolean typed = buf.readBoolean();
         
-        // Create the quiz data
-        QuestionBank.QuizData quizData = new QuestionBank.QuizData(question, correctAnswer, answers, correctIndex);
+        // Create the quiz data; the server says which answer was right once one is picked
+        QuestionBank.QuizData quizData = new QuestionBank.QuizData(question, null, answers, -1);
         
         // Execute on the main client thread
         client.execute(() -> {
             // Open the quiz screen with the question data
-            client.setScreen(new QuizScreen(quizData));
+            client.setScreen(new QuizScreen(quizData, sessionId, typed));
         });
     }
     
+    // Rebuilds a compact card from the cached deck, or returns null if the ids do not fit it
+    private static QuestionBank.QuizData decodeCompactCard(DeckSnapshot.Deck deck, int questionIndex, int[] answerIds) {
+        if (deck == null || questionIndex < 0 || questionIndex >= deck.getQuestionCount()) {
+            return null;
+        }
+        int answer = deck.getAnswerId(questionIndex);
+        int correctIndex = -1;
+        List<String> answers = new ArrayList<>(answerIds.length);
+        for (int i = 0; i < answerIds.length; i++) {
+            int answerId = answerIds[i];
+            if (answerId >= deck.getAnswerCount()) {
+                return null;
+            }
+            if (answerId == answer) {
+                correctIndex = i;
+            }
+            answers.add(answerId >= 0 ? deck.getAnswerById(answerId) : QuestionBank.defaultOption(i));
+        }
+        if (correctIndex < 0) {
+            return null;
+        }
+        return new QuestionBank.QuizData(deck.getQuestionText(questionIndex), deck.getAnswerText(questionIndex),
+            answers, correctIndex, questionIndex, answerIds);
+    }
+    
+    // Tells the client which deck the player is on, by hash
+    static void sendDeckHashPacket(ServerPlayerEntity player, DeckSnapshot snapshot) {
+        PacketByteBuf buf = PacketByteBufs.create();
+        buf.writeByteArray(snapshot.getHash());
+        ServerPlayNetworking.send(player, DECK_HASH_PACKET, buf);
+    }
+    
+    // Sends a deck the client does not have cached, in chunks
+    static void sendDeckDataPackets(ServerPlayerEntity player, DeckSnapshot snapshot) {
+        byte[][] chunks = snapshot.getChunks(DECK_DATA_CHUNK_SIZE);
+        for (int i = 0; i < chunks.length; i++) {
+            PacketByteBuf buf = PacketByteBufs.create();
+            buf.writeByteArray(snapshot.getHash());
+            buf.writeVarInt(i);
+            buf.writeVarInt(chunks.length);
+            buf.writeByteArray(chunks[i]);
+            ServerPlayNetworking.send(player, DECK_DATA_PACKET, buf);
+        }
+    }
+    
+    // Server-side handler for the client saying whether it has the announced deck
+    private static void handleDeckStatusPacket(MinecraftServer server,
+                                             ServerPlayerEntity player,
+                                             ServerPlayNetworkHandler handler,
+                                             PacketByteBuf buf,
+                                             PacketSender responseSender) {
+        byte[] hash = buf.readByteArray(DECK_HASH_LENGTH);
+        boolean cached = buf.readBoolean();
+        
+        server.execute(() -> {
+            DeckSync sync = Studycraft.getDeckSync();
+            if (sync != null) {
+                sync.onClientStatus(player, hash, cached);
+            }
+        });
+    }
+    
+    private static ClientDeckCache getClientDeckCache(MinecraftClient client) {
+        if (clientDeckCache == null) {
+            Path cacheDir = FabricLoader.getInstance().getGameDir().resolve(Studycraft.MOD_ID).resolve("deck_cache");
+            clientDeckCache = new ClientDeckCache(cacheDir, client);
+        }
+        return clientDeckCache;
+    }
+    
+    // Client-side handler for the server announcing the player's deck
+    private static void handleDeckHashPacket(MinecraftClient client,
+                                           ClientPlayNetworkHandler handler,
+                                           PacketByteBuf buf,
+                                           PacketSender responseSender) {
+        byte[] hash = buf.readByteArray(DECK_HASH_LENGTH);
+        
+        client.execute(() -> getClientDeckCache(client).onAnnounced(hash, cached -> sendDeckStatusPacket(hash, cached)));
+    }
+    
+    // Client-side handler for a chunk of a deck we asked for
+    private static void handleDeckDataPacket(MinecraftClient client,
+                                           ClientPlayNetworkHandler handler,
+                                           PacketByteBuf buf,
+                                           PacketSender responseSender) {
+        byte[] hash = buf.readByteArray(DECK_HASH_LENGTH);
+        int index = buf.readVarInt();
+        int total = buf.readVarInt();
+        byte[] data = buf.readByteArray(DECK_DATA_CHUNK_SIZE);
+        
+        client.execute(() -> getClientDeckCache(client).onChunk(hash, index, total, data, () -> sendDeckStatusPacket(hash, true)));
+    }
+    
+    // Client method to tell the server whether we have the deck it announced
+    private static void sendDeckStatusPacket(byte[] hash, boolean cached) {
+        if (!ClientPlayNetworking.canSend(DECK_STATUS_PACKET)) {
+            return;
+        }
+        PacketByteBuf buf = PacketByteBufs.create();
+        buf.writeByteArray(hash);
+        buf.writeBoolean(cached);
+        ClientPlayNetworking.send(DECK_STATUS_PACKET, buf);
+    }
+    
     // Server-side handler for answer submission
     private static void handleSubmitAnswerPacket(MinecraftServer server,
                                                ServerPlayerEntity player,
                                                ServerPlayNetworkHandler handler,
                                                PacketByteBuf buf,
                                                PacketSender responseSender) {
-        // Read answer result from packet (0 for correct, 1 for wrong)
-        int answerResult = buf.readInt();
-        // Read the question and correct answer
-        String question = buf.readString();
-        String correctAnswer = buf.readString();
+        // Which card is being answered, which option was picked, and how long the player took
+        int sessionId = buf.readVarInt();
+        int chosenIndex = buf.readVarInt();
+        int reportedLatencyMs = buf.readVarInt();
         
         // Process on the server thread
         server.execute(() -> {
-            boolean isCorrect = (answerResult == 0);
+            QuizSessions.Session session = closeSession(player, sessionId);
+            if (session == null || session.isTyped()) {
+                // Expired; let the screen stop waiting
+                sendAnswerResult(player, false, -1, "", null);
+                return;
+            }
+            QuestionBank.QuizData quizData = session.getQuizData();
+            boolean isCorrect = chosenIndex == quizData.getCorrectIndex();
+            applyAnswer(player, quizData.getQuestion(), quizData.getCorrectAnswer(), isCorrect, session.clampLatencyMs(reportedLatencyMs));
+            sendAnswerResult(player, isCorrect, quizData.getCorrectIndex(), quizData.getCorrectAnswer(), null);
+        });
+    }
+    
+    // Tells the client whether its answer was right, and what the right one was
+    private static void sendAnswerResult(ServerPlayerEntity player, boolean correct, int correctIndex, String correctAnswer, String suggestion) {
+        PacketByteBuf result = PacketByteBufs.create();
+        result.writeBoolean(correct);
+        // Shifted so "no option" (-1) fits, as for typed answers
+        result.writeVarInt(correctIndex + 1);
+        result.writeString(correctAnswer);
+        result.writeString(suggestion != null ? suggestion : "");
+        ServerPlayNetworking.send(player, ANSWER_RESULT_PACKET, result);
+    }
+    
+    // Ends the player's session for an answered card, telling them if it had already expired. Server thread.
+    private static QuizSessions.Session closeSession(ServerPlayerEntity player, int sessionId) {
+        QuizSessions sessions = Studycraft.getQuizSessions();
+        QuizSessions.Session session = sessions != null ? sessions.close(player.getUuid(), sessionId) : null;
+        if (session == null) {
+            player.sendMessage(Text.literal("§6[StudyCraft]§r That quiz card has expired."), false);
+        }
+        return session;
+    }
+    
+    // Records an answer and rewards or punishes the player for it. Server thread.
+    private static void applyAnswer(ServerPlayerEntity player, String question, String correctAnswer, boolean isCorrect, int latencyMs) {
+        // Update statistics
+        QuizStatistics stats = Studycraft.getQuizStatistics();
+        stats.recordAnswer(player.getUuid(), question, isCorrect, latencyMs);
+        // The player's next adaptive or spaced card depends on this answer
+        QuizPacketPool pool = Studycraft.getQuizPacketPool();
+        if (pool != null) {
+            pool.answered(player.getUuid());
+        }
+        // Keeps an open stats view live, once the client has synced its stats
+        StatsDelta delta = stats.pushStats(player.getUuid());
+        if (delta != null) {
+            sendStatsDelta(player, delta);
+        }
+        if (isCorrect) {
+            // Play a sound effect for correct answer
+            player.getWorld().playSound(null, player.getX(), player.getY(), player.getZ(), 
+                SoundEvents.ENTITY_EXPERIENCE_ORB_PICKUP, SoundCategory.PLAYERS, 
+                0.5F, 1.0F);
+            
+            // Use the current hunger gain setting from the server instance
+            int hungerGain = Studycraft.getServerHungerGain();
+            float saturationGain = hungerGain * 0.25F; // Saturation is typically 25% of hunger
             
-            // Update statistics
-            Studycraft.getQuizStatistics().recordAnswer(player.getUuid(), question, isCorrect);
+            // No message display for correct answers
+            player.getHungerManager().add(hungerGain, saturationGain);
+        } else {
+            // Format the question and answer for the message
+            String formattedQuestion = question.length() > 30 ? 
+                question.substring(0, 30) + "..." : question;
             
-            if (isCorrect) {
-                // Play a sound effect for correct answer
-                player.getWorld().playSound(null, player.getX(), player.getY(), player.getZ(), 
-                    SoundEvents.ENTITY_EXPERIENCE_ORB_PICKUP, SoundCategory.PLAYERS, 
-                    0.5F, 1.0F);
-                
-                // Use the current hunger gain setting from the server instance
-                int hungerGain = Studycraft.getServerHungerGain();
-                float saturationGain = hungerGain * 0.25F; // Saturation is typically 25% of hunger
-                
-                // No message display for correct answers
-                player.getHungerManager().add(hungerGain, saturationGain);
-            } else {
-                // Format the question and answer for the message
-                String formattedQuestion = question.length() > 30 ? 
-                    question.substring(0, 30) + "..." : question;
-                
-                // Send chat messages for wrong answers
-                player.sendMessage(Text.literal("§c[StudyCraft]§r Wrong answer! Taking damage."), false);
-                player.sendMessage(Text.literal("§6Question: §r" + formattedQuestion), false);
-                player.sendMessage(Text.literal("§6Correct answer: §r" + correctAnswer), false);
-                
-                player.damage(player.getDamageSources().generic(), 2.0F); // 1 heart of damage
+            // Send chat messages for wrong answers
+            player.sendMessage(Text.literal("§c[StudyCraft]§r Wrong answer! Taking damage."), false);
+            player.sendMessage(Text.literal("§6Question: §r" + formattedQuestion), false);
+            player.sendMessage(Text.literal("§6Correct answer: §r" + correctAnswer), false);
+            
+            player.damage(player.getDamageSources().generic(), 2.0F); // 1 heart of damage
+        }
+    }
+    
+    // Server-side handler for typed answers, which the server grades itself
+    private static void handleSubmitTypedAnswerPacket(MinecraftServer server,
+                                                    ServerPlayerEntity player,
+                                                    ServerPlayNetworkHandler handler,
+                                                    PacketByteBuf buf,
+                                                    PacketSender responseSender) {
+        int sessionId = buf.readVarInt();
+        String guess = buf.readString(MAX_TYPED_ANSWER_LENGTH);
+        int reportedLatencyMs = buf.readVarInt();
+        
+        server.execute(() -> {
+            QuizSessions.Session session = closeSession(player, sessionId);
+            QuestionBank.QuizData quizData = session != null ? session.getQuizData() : null;
+            if (quizData == null || !session.isTyped() || quizData.getQuestionIndex() < 0) {
+                // Expired, or a card that is not from a deck; let the screen stop waiting
+                sendAnswerResult(player, false, -1, "", null);
+                return;
             }
+            int latencyMs = session.clampLatencyMs(reportedLatencyMs);
+            
+            // Grade off the server thread, since the first grade against a deck builds its matcher
+            CompletableFuture.supplyAsync(() -> session.getBank().getAnswerMatcher().grade(quizData.getQuestionIndex(), guess))
+                .thenAccept(grade -> server.execute(() -> {
+                    // Left while it was graded; recording it now would load their stats again
+                    if (player.isDisconnected()) {
+                        return;
+                    }
+                    applyAnswer(player, quizData.getQuestion(), quizData.getCorrectAnswer(), grade.isCorrect(), latencyMs);
+                    sendAnswerResult(player, grade.isCorrect(), -1, quizData.getCorrectAnswer(), grade.getSuggestion());
+                }))
+                .exceptionally(e -> {
+                    Studycraft.LOGGER.error("Failed to grade a typed answer", e);
+                    return null;
+                });
         });
     }
     
-
+    // Client-side handler for the server's verdict on an answer
+    private static void handleAnswerResultPacket(MinecraftClient client,
+                                              ClientPlayNetworkHandler handler,
+                                              PacketByteBuf buf,
+                                              PacketSender responseSender) {
+        boolean correct = buf.readBoolean();
+        int correctIndex = buf.readVarInt() - 1;
+        String correctAnswer = buf.readString();
+        String suggestion = buf.readString();
+        
+        client.execute(() -> {
+            if (client.currentScreen instanceof QuizScreen quizScreen) {
+                quizScreen.showResult(correct, correctIndex, correctAnswer, suggestion.isEmpty() ? null : suggestion);
+            }
+        });
+    }
     
     // Client method to send answer back to server
-    public static void sendAnswerPacket(int answerResult, String question, String correctAnswer) {
+    public static void sendAnswerPacket(int sessionId, int chosenIndex, int latencyMs) {
         PacketByteBuf buf = PacketByteBufs.create();
-        buf.writeInt(answerResult);
-        buf.writeString(question);
-        buf.writeString(correctAnswer);
+        buf.writeVarInt(sessionId);
+        buf.writeVarInt(chosenIndex);
+        buf.writeVarInt(latencyMs);
         ClientPlayNetworking.send(SUBMIT_ANSWER_PACKET, buf);
     }
     
+    // Client method to send a typed answer to the server for grading
+    public static void sendTypedAnswerPacket(int sessionId, String guess, int latencyMs) {
+        PacketByteBuf buf = PacketByteBufs.create();
+        buf.writeVarInt(sessionId);
+        buf.writeString(guess, MAX_TYPED_ANSWER_LENGTH);
+        buf.writeVarInt(latencyMs);
+        ClientPlayNetworking.send(SUBMIT_TYPED_ANSWER_PACKET, buf);
+    }
+    
     // Client method to send updated question bank to server
     public static void sendUpdateQuestionBankPacket(String newContent) {
-        PacketByteBuf buf = PacketByteBufs.create();
-        buf.writeString(newContent);
-        ClientPlayNetworking.send(UPDATE_QUESTION_BANK_PACKET, buf);
+        int transferId = ++lastTransferId;
+        MinecraftClient client = MinecraftClient.getInstance();
+        
+        // Compress off the render thread, then send the chunks in order
+        CompletableFuture.supplyAsync(() -> DeckUploads.encode(newContent))
+            .thenAccept(encoded -> client.execute(() -> {
+                if (!ClientPlayNetworking.canSend(UPDATE_QUESTION_BANK_PACKET)) {
+                    // Left the server while compressing
+                    return;
+                }
+                byte[][] chunks = encoded.getChunks();
+                for (int i = 0; i < chunks.length; i++) {
+                    PacketByteBuf buf = PacketByteBufs.create();
+                    buf.writeVarInt(transferId);
+                    buf.writeVarInt(i);
+                    buf.writeVarInt(chunks.length);
+                    buf.writeVarInt(encoded.getTextLength());
+                    buf.writeInt(encoded.getCrc());
+                    buf.writeByteArray(chunks[i]);
+                    ClientPlayNetworking.send(UPDATE_QUESTION_BANK_PACKET, buf);
+                }
+            }))
+            .exceptionally(e -> {
+                Studycraft.LOGGER.error("Failed to upload question bank", e);
+                return null;
+            });
     }
     
-    // Server handler for updating question bank
+    // Server handler for question bank upload chunks; see DeckUploads for the protocol
     private static void handleUpdateQuestionBankPacket(MinecraftServer server,
                                                       ServerPlayerEntity player,
                                                       ServerPlayNetworkHandler handler,
                                                       PacketByteBuf buf,
                                                       PacketSender responseSender) {
-        // Read the new content
-        String newContent = buf.readString();
+        int transferId = buf.readVarInt();
+        int index = buf.readVarInt();
+        int total = buf.readVarInt();
+        int textLength = buf.readVarInt();
+        int crc = buf.readInt();
+        byte[] data = buf.readByteArray(DeckUploads.CHUNK_SIZE);
         
-        // Process on the server thread
-        server.execute(() -> {
-            // Update the question bank
-            Studycraft.updateQuestionBank(newContent);
-            // Send temporary actionbar message instead of chat message
-            player.sendMessage(Text.literal("§a[StudyCraft]§r Question bank updated!"), true);
+        DeckUploads uploads = Studycraft.getDeckUploads();
+        if (uploads == null) {
+            return;
+        }
+        // Reassembled and inflated on the upload thread, then compiled on the common pool
+        uploads.receive(player.getUuid(), transferId, index, total, textLength, crc, data, new DeckUploads.Listener() {
+            @Override
+            public void onProgress(int transferId, int received, int total) {
+                if (total > 1) {
+                    PacketByteBuf progress = PacketByteBufs.create();
+                    progress.writeVarInt(transferId);
+                    progress.writeVarInt(received);
+                    progress.writeVarInt(total);
+                    server.execute(() -> ServerPlayNetworking.send(player, DECK_UPLOAD_PROGRESS_PACKET, progress));
+                }
+            }
+            
+            @Override
+            public void onComplete(int transferId, String content) {
+                // Numbered here, in the order uploads finished, since the parses can finish in any order
+                DeckRegistry decks = Studycraft.getDeckRegistry();
+                long version = decks != null ? decks.nextDefaultDeckVersion() : 0;
+                QuizStatistics stats = Studycraft.getQuizStatistics();
+                CompletableFuture.supplyAsync(() -> {
+                    QuestionBank parsed = new QuestionBank(content);
+                    if (stats != null) {
+                        stats.registerQuestions(parsed);
+                    }
+                    return parsed;
+                })
+                    .thenAccept(newQuestionBank -> server.execute(() -> installUploadedQuestionBank(player, version, content, newQuestionBank)))
+                    .exceptionally(e -> {
+                        Studycraft.LOGGER.error("Failed to parse question bank", e);
+                        return null;
+                    });
+            }
+            
+            @Override
+            public void onFailed(int transferId, String reason) {
+                Studycraft.LOGGER.warn("Rejected question bank upload from {}: {}", player.getName().getString(), reason);
+                server.execute(() -> player.sendMessage(Text.literal("§c[StudyCraft]§r Question bank upload failed: " + reason), false));
+            }
+        });
+    }
+    
+    private static void installUploadedQuestionBank(ServerPlayerEntity player, long version, String newContent, QuestionBank newQuestionBank) {
+        // Update the question bank and keep it across restarts
+        DeckRegistry decks = Studycraft.getDeckRegistry();
+        if (decks != null) {
+            if (!decks.installDefaultDeck(version, newContent, newQuestionBank)) {
+                // Another upload finished after this one and is already in
+                return;
+            }
+            decks.saveDefaultDeck(newContent);
+        } else {
+            Studycraft.installQuestionBank(newQuestionBank);
+        }
+        // Send temporary actionbar message instead of chat message
+        player.sendMessage(Text.literal("§a[StudyCraft]§r Question bank updated!"), true);
+        
+        // Tell the player which lines were skipped
+        if (newQuestionBank.getParseErrors() != null) {
+            player.sendMessage(Text.literal("§6[StudyCraft]§r " + newQuestionBank.getParseErrors()), false);
+        }
+    }
+    
+    // Client-side handler for upload progress, shown on the actionbar
+    private static void handleDeckUploadProgressPacket(MinecraftClient client,
+                                                    ClientPlayNetworkHandler handler,
+                                                    PacketByteBuf buf,
+                                                    PacketSender responseSender) {
+        int transferId = buf.readVarInt();
+        int received = buf.readVarInt();
+        int total = buf.readVarInt();
+        
+        client.execute(() -> {
+            // Progress of an upload that has since been replaced is stale
+            if (transferId == lastTransferId && client.player != null) {
+                client.player.sendMessage(Text.literal("§6[StudyCraft]§r Uploading question bank... " + (received * 100 / total) + "%"), true);
+            }
         });
     }
     
     // Client method to request stats from server
     public static void requestStats() {
         PacketByteBuf buf = PacketByteBufs.create();
+        // Where our copy is up to, so the server only sends what changed since
+        ClientStatistics clientStats = Studycraft.getClientStats();
+        buf.writeLong(clientStats.getEpoch());
+        buf.writeVarLong(clientStats.getVersion());
         ClientPlayNetworking.send(REQUEST_STATS_PACKET, buf);
     }
     
     // Client method to send difficulty update to server
-    public static void sendDifficultyUpdatePacket(int hungerInterval, int hungerGain) {
+    public static void sendDifficultyUpdatePacket(int hungerInterval, int hungerGain, QuestionSelection questionSelection, AnswerMode answerMode) {
         PacketByteBuf buf = PacketByteBufs.create();
         buf.writeInt(hungerInterval);
         buf.writeInt(hungerGain);
+        buf.writeVarInt(questionSelection.ordinal());
+        buf.writeVarInt(answerMode.ordinal());
         ClientPlayNetworking.send(DIFFICULTY_UPDATE_PACKET, buf);
     }
     
@@ -203,12 +630,16 @@ public class StudycraftNetworking {
         // Read the new difficulty settings
         int hungerInterval = buf.readInt();
         int hungerGain = buf.readInt();
+        QuestionSelection questionSelection = QuestionSelection.byOrdinal(buf.readVarInt());
+        AnswerMode answerMode = AnswerMode.byOrdinal(buf.readVarInt());
         
         // Process on the server thread
         server.execute(() -> {
             // Update the difficulty settings on the server
             Studycraft.setServerHungerInterval(hungerInterval);
             Studycraft.setServerHungerGain(hungerGain);
+            Studycraft.setServerQuestionSelection(questionSelection);
+            Studycraft.setServerAnswerMode(answerMode);
             
             // --REDUNDANT AS ALREADY LOGGED IN CONFIGSCREEN -- //
             // Send confirmation to player
@@ -253,70 +684,42 @@ public class StudycraftNetworking {
                                                ServerPlayNetworkHandler handler,
                                                PacketByteBuf buf,
                                                PacketSender responseSender) {
+        long clientEpoch = buf.readLong();
+        long clientVersion = buf.readVarLong();
+        
         server.execute(() -> {
-            // Get player statistics
-            QuizStatistics stats = Studycraft.getQuizStatistics();
-            
-            // Get player stats using the correct methods from QuizStatistics
-            Map<String, QuizStatistics.StatsEntry> playerStats = stats.getAllStats(player.getUuid());
-            double overallPercentage = stats.getOverallPercentCorrect(player.getUuid());
-            
-            // Create response packet
-            PacketByteBuf response = PacketByteBufs.create();
-            
-            // Write overall percentage
-            response.writeDouble(overallPercentage);
-            
-            // Write individual question stats
-            response.writeInt(playerStats.size());
-            for (Map.Entry<String, QuizStatistics.StatsEntry> entry : playerStats.entrySet()) {
-                response.writeString(entry.getKey()); // Question text
-                response.writeInt(entry.getValue().getTimesCorrect());
-                response.writeInt(entry.getValue().getTimesWrong());
-                response.writeFloat(entry.getValue().getPercentCorrect());
-            }
-            
-            // Send stats back to client
-            ServerPlayNetworking.send(player, STATS_DATA_PACKET, response);
+            // Only the questions whose stats changed since the client's copy
+            StatsDelta delta = Studycraft.getQuizStatistics().syncStats(player.getUuid(), clientEpoch, clientVersion);
+            sendStatsDelta(player, delta);
         });
     }
     
+    private static void sendStatsDelta(ServerPlayerEntity player, StatsDelta delta) {
+        PacketByteBuf response = PacketByteBufs.create();
+        response.writeByteArray(StatsCodec.encodeDelta(delta));
+        ServerPlayNetworking.send(player, STATS_DATA_PACKET, response);
+    }
+    
     // Client handler for stats data - FIXED VERSION
     private static void handleStatsDataPacket(MinecraftClient client,
                                             ClientPlayNetworkHandler handler,
                                             PacketByteBuf buf,
                                             PacketSender responseSender) {
-        // Read stats data
-        double overallPercentage = buf.readDouble();
-        
-        int statsCount = buf.readInt();
-        Map<String, QuizStatistics.StatsEntry> playerStats = new HashMap<>();
-        
-        for (int i = 0; i < statsCount; i++) {
-            String question = buf.readString();
-            int timesCorrect = buf.readInt();
-            int timesWrong = buf.readInt();
-            float percentCorrect = buf.readFloat();
-            
-            // Create a properly populated StatsEntry
-            QuizStatistics.StatsEntry entry = new QuizStatistics.StatsEntry();
-            
-            // We need to set the values manually since the fields are private
-            // We'll use a loop to simulate the correct/wrong answers being recorded
-            for (int j = 0; j < timesCorrect; j++) {
-                entry.incrementCorrect();
-            }
-            for (int j = 0; j < timesWrong; j++) {
-                entry.incrementWrong();
-            }
-            
-            playerStats.put(question, entry);
+        StatsDelta delta;
+        try {
+            delta = StatsCodec.decodeDelta(buf.readByteArray());
+        } catch (IOException e) {
+            Studycraft.LOGGER.error("Received damaged quiz statistics", e);
+            return;
         }
         
         // Execute on client thread
         client.execute(() -> {
-            // Update the client statistics with the received data
-            Studycraft.getClientStats().updateStats(playerStats, (float) overallPercentage);
+            if (!Studycraft.getClientStats().applyDelta(delta)) {
+                // Our copy is out of step with the server's; ask for all of it
+                requestStats();
+                return;
+            }
             
             // Notify the config screen that stats have been received
             if (client.currentScreen instanceof StudycraftConfigScreen) {
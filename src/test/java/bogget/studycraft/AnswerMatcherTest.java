@@ -0,0 +1,116 @@
+package bogget.studycraft;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AnswerMatcherTest {
+    private static AnswerMatcher matcher(String text) {
+        return QuestionBank.ofDeck(QuestionBankParser.parse(text)).getAnswerMatcher();
+    }
+
+    @Test
+    public void typosAreForgivenByLength() {
+        AnswerMatcher matcher = matcher("Lithium\tCrimson flame\nSodium\tYellow flame\nIron\tFe\n");
+        assertTrue(matcher.grade(0, "crimson flame").isCorrect());
+        assertTrue(matcher.grade(0, "Crimsin flame!").isCorrect());
+        assertTrue(matcher.grade(2, "fe").isCorrect());
+        assertFalse(matcher.grade(2, "fa").isCorrect());
+        assertFalse(matcher.grade(0, "").isCorrect());
+    }
+
+    @Test
+    public void wrongGuessesSuggestTheNearestAnswer() {
+        AnswerMatcher matcher = matcher("Lithium\tCrimson flame\nSodium\tYellow flame\n");
+        AnswerMatcher.Grade grade = matcher.grade(0, "yellow flame");
+        assertFalse(grade.isCorrect());
+        assertEquals("Yellow flame", grade.getSuggestion());
+        assertNull(matcher.grade(0, "something else entirely").getSuggestion());
+    }
+
+    @Test
+    public void exactFormsSharedWithAnotherAnswerAreAccepted() {
+        // "red" is both an alternative here and another question's whole answer
+        AnswerMatcher matcher = matcher("Lithium flame\tRed; crimson\nStrontium flame\tRed\n");
+        assertTrue(matcher.grade(0, "red").isCorrect());
+        assertTrue(matcher.grade(1, "red").isCorrect());
+
+        // Normalizing drops the charge, so both answers read "na"
+        matcher = matcher("Sodium ion\tNa+\nSodium\tNa\n");
+        assertTrue(matcher.grade(0, "Na+").isCorrect());
+        assertTrue(matcher.grade(1, "Na+").isCorrect());
+    }
+
+    @Test
+    public void treeAgreesWithBruteForce() {
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            text.append("Question ").append(i).append('\t').append(word(random, 3 + random.nextInt(14))).append('\n');
+        }
+        QuestionBank bank = QuestionBank.ofDeck(QuestionBankParser.parse(text));
+        AnswerMatcher matcher = bank.getAnswerMatcher();
+
+        for (int round = 0; round < 5000; round++) {
+            int question = random.nextInt(bank.getQuestionCount());
+            // Mostly near misses of some answer in the deck, and a few unrelated words
+            String guess = random.nextInt(10) == 0
+                ? word(random, 1 + random.nextInt(16))
+                : mutate(random, bank.getAnswerText(random.nextInt(bank.getQuestionCount())));
+            String normalized = AnswerMatcher.normalize(guess);
+
+            int answer = bank.getAnswerId(question);
+            int own = Integer.MAX_VALUE;
+            int ownLength = 0;
+            int other = Integer.MAX_VALUE;
+            for (int id = 0; id < bank.getAnswerCount(); id++) {
+                String form = AnswerMatcher.normalize(bank.getAnswerById(id));
+                int distance = AnswerMatcher.distance(normalized, form);
+                if (id == answer) {
+                    own = distance;
+                    ownLength = form.length();
+                } else {
+                    other = Math.min(other, distance);
+                }
+            }
+            boolean expected = !normalized.isEmpty()
+                && (own == 0 || own <= AnswerMatcher.allowedTypos(ownLength) && own <= other);
+
+            AnswerMatcher.Grade grade = matcher.grade(question, guess);
+            assertEquals(expected, grade.isCorrect(), "guess " + guess + " at " + bank.getAnswerText(question));
+            if (!expected) {
+                boolean close = !normalized.isEmpty()
+                    && Math.min(own, other) <= AnswerMatcher.searchRadius(normalized.length());
+                assertEquals(close, grade.getSuggestion() != null, "suggestion for " + guess);
+            }
+        }
+    }
+
+    // Few letters, so answers in the deck are often a few edits apart
+    private static String word(Random random, int length) {
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(5)));
+        }
+        return word.toString();
+    }
+
+    private static String mutate(Random random, String text) {
+        StringBuilder guess = new StringBuilder(text);
+        int edits = random.nextInt(5);
+        for (int i = 0; i < edits && guess.length() > 0; i++) {
+            int at = random.nextInt(guess.length());
+            switch (random.nextInt(3)) {
+                case 0 -> guess.deleteCharAt(at);
+                case 1 -> guess.insert(at, (char) ('a' + random.nextInt(5)));
+                default -> guess.setCharAt(at, (char) ('a' + random.nextInt(5)));
+            }
+        }
+        return guess.toString();
+    }
+}
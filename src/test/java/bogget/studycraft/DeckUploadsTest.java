@@ -0,0 +1,151 @@
+package bogget.studycraft;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DeckUploadsTest {
+    private static final UUID PLAYER = new UUID(0, 1);
+
+    private DeckUploads uploads;
+    // What the listener was told, in order, as "progress", "complete" or "failed" lines
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private String completed;
+
+    private final DeckUploads.Listener listener = new DeckUploads.Listener() {
+        @Override
+        public void onProgress(int transferId, int received, int total) {
+            events.add("progress " + transferId + " " + received + "/" + total);
+        }
+
+        @Override
+        public void onComplete(int transferId, String content) {
+            completed = content;
+            events.add("complete " + transferId);
+        }
+
+        @Override
+        public void onFailed(int transferId, String reason) {
+            events.add("failed " + transferId + " " + reason);
+        }
+    };
+
+    @BeforeEach
+    public void setUp() {
+        uploads = new DeckUploads();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        uploads.close();
+    }
+
+    // Text that barely compresses, so it needs several chunks
+    private static String deckText(int questions) {
+        Random random = new Random(3);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < questions; i++) {
+            text.append("Question ").append(i).append('\t');
+            for (int j = 0; j < 40; j++) {
+                text.append((char) ('!' + random.nextInt(90)));
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    private void send(int transferId, DeckUploads.Encoded encoded, int index, byte[] data) {
+        uploads.receive(PLAYER, transferId, index, encoded.getChunks().length, encoded.getTextLength(), encoded.getCrc(), data, listener);
+    }
+
+    private String next() throws InterruptedException {
+        String event = events.poll(5, TimeUnit.SECONDS);
+        assertTrue(event != null, "no event from the upload worker");
+        return event;
+    }
+
+    private String nextOutcome() throws InterruptedException {
+        String event;
+        do {
+            event = next();
+        } while (event.startsWith("progress"));
+        return event;
+    }
+
+    @Test
+    public void chunkedUploadRoundTrips() throws InterruptedException {
+        String text = deckText(5000);
+        DeckUploads.Encoded encoded = DeckUploads.encode(text);
+        int total = encoded.getChunks().length;
+        assertTrue(total > 2, "expected several chunks, got " + total);
+
+        for (int i = 0; i < total; i++) {
+            send(1, encoded, i, encoded.getChunks()[i]);
+        }
+        for (int i = 1; i <= total; i++) {
+            assertEquals("progress 1 " + i + "/" + total, next());
+        }
+        assertEquals("complete 1", next());
+        assertEquals(text, completed);
+    }
+
+    @Test
+    public void corruptDataIsRejected() throws InterruptedException {
+        DeckUploads.Encoded encoded = DeckUploads.encode(deckText(100));
+        byte[] data = encoded.getChunks()[0].clone();
+        for (int i = 0; i < data.length; i += 7) {
+            data[i] ^= 0x5A;
+        }
+        send(1, encoded, 0, data);
+        assertTrue(nextOutcome().startsWith("failed 1"));
+    }
+
+    @Test
+    public void wrongChecksumIsRejected() throws InterruptedException {
+        DeckUploads.Encoded encoded = DeckUploads.encode(deckText(100));
+        uploads.receive(PLAYER, 1, 0, 1, encoded.getTextLength(), encoded.getCrc() + 1, encoded.getChunks()[0], listener);
+        assertEquals("failed 1 checksum mismatch, the upload was damaged", nextOutcome());
+    }
+
+    @Test
+    public void chunksOutOfOrderAreRejected() throws InterruptedException {
+        DeckUploads.Encoded encoded = DeckUploads.encode(deckText(5000));
+        send(1, encoded, 0, encoded.getChunks()[0]);
+        assertEquals("progress 1 1/" + encoded.getChunks().length, next());
+        send(1, encoded, 2, encoded.getChunks()[2]);
+        assertEquals("failed 1 chunk 2 does not belong to the upload", next());
+
+        // The rest of the failed transfer is ignored until a new one starts
+        send(1, encoded, 1, encoded.getChunks()[1]);
+        DeckUploads.Encoded marker = DeckUploads.encode("Lithium\tCrimson flame\n");
+        send(2, marker, 0, marker.getChunks()[0]);
+        assertEquals("progress 2 1/1", next());
+        assertEquals("complete 2", next());
+    }
+
+    @Test
+    public void oversizedUploadsAreRejected() throws InterruptedException {
+        byte[] data = new byte[16];
+        uploads.receive(PLAYER, 1, 0, 1, DeckUploads.MAX_TEXT_BYTES + 1, 0, data, listener);
+        assertTrue(next().startsWith("failed 1 question bank is too large"));
+        uploads.receive(PLAYER, 2, 0, Integer.MAX_VALUE, 100, 0, data, listener);
+        assertTrue(next().startsWith("failed 2 question bank is too large"));
+    }
+
+    @Test
+    public void textLongerThanAnnouncedIsRejected() throws InterruptedException {
+        String text = deckText(100);
+        DeckUploads.Encoded encoded = DeckUploads.encode(text);
+        uploads.receive(PLAYER, 1, 0, 1, encoded.getTextLength() / 2, encoded.getCrc(), encoded.getChunks()[0], listener);
+        assertEquals("failed 1 data is corrupt or longer than announced", nextOutcome());
+    }
+}
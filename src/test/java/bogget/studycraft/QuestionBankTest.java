@@ -0,0 +1,159 @@
+package bogget.studycraft;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QuestionBankTest {
+    private static QuestionBank deck(int questions, int distinctAnswers) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < questions; i++) {
+            text.append("Question ").append(i).append('\t').append("Answer ").append(i % distinctAnswers).append('\n');
+        }
+        return QuestionBank.ofDeck(QuestionBankParser.parse(text));
+    }
+
+    // Checks the card's options are distinct, hold the correct answer at the correct
+    // index, and agree with its answer ids
+    private static void checkCard(QuestionBank bank, int questionIndex, QuestionBank.QuizData card) {
+        List<String> options = card.getAllAnswers();
+        assertEquals(4, options.size());
+        assertEquals(4, new HashSet<>(options).size(), "options repeat: " + options);
+        assertEquals(bank.getAnswerText(questionIndex), card.getCorrectAnswer());
+        assertEquals(card.getCorrectAnswer(), options.get(card.getCorrectIndex()));
+        assertEquals(bank.getQuestionText(questionIndex), card.getQuestion());
+        assertEquals(questionIndex, card.getQuestionIndex());
+
+        int[] answerIds = card.getAnswerIds();
+        assertEquals(bank.getAnswerId(questionIndex), answerIds[card.getCorrectIndex()]);
+        for (int slot = 0; slot < options.size(); slot++) {
+            String expected = answerIds[slot] >= 0 ? bank.getAnswerById(answerIds[slot]) : QuestionBank.defaultOption(slot);
+            assertEquals(expected, options.get(slot));
+        }
+    }
+
+    @Test
+    public void optionsAreDistinctAndIncludeTheAnswer() {
+        QuestionBank bank = deck(200, 200);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < bank.getQuestionCount(); i++) {
+                checkCard(bank, i, bank.getQuestion(i));
+            }
+        }
+    }
+
+    @Test
+    public void sharedAnswersAreNeverOfferedTwice() {
+        // 100 questions over 5 answers: the wrong options must still differ from the correct one
+        QuestionBank bank = deck(100, 5);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < bank.getQuestionCount(); i++) {
+                checkCard(bank, i, bank.getQuestion(i));
+            }
+        }
+    }
+
+    @Test
+    public void smallDecksFillWithDefaultOptions() {
+        QuestionBank bank = deck(2, 2);
+        for (int round = 0; round < 100; round++) {
+            QuestionBank.QuizData card = bank.getQuestion(round % 2);
+            checkCard(bank, round % 2, card);
+            int defaults = 0;
+            for (int answerId : card.getAnswerIds()) {
+                if (answerId < 0) {
+                    defaults++;
+                }
+            }
+            assertEquals(2, defaults);
+        }
+    }
+
+    @Test
+    public void everyOptionIsDrawn() {
+        // Over many draws each other answer should show up as a wrong option
+        QuestionBank bank = deck(6, 6);
+        Set<String> seen = new HashSet<>();
+        for (int round = 0; round < 2000; round++) {
+            seen.addAll(bank.getQuestion(0).getAllAnswers());
+        }
+        assertEquals(6, seen.size());
+    }
+
+    @Test
+    public void correctAnswerLandsInEverySlot() {
+        QuestionBank bank = deck(50, 50);
+        int[] slots = new int[4];
+        for (int round = 0; round < 4000; round++) {
+            slots[bank.getQuestion(round % 50).getCorrectIndex()]++;
+        }
+        for (int count : slots) {
+            // 1000 expected per slot
+            assertTrue(count > 800 && count < 1200, "correct answer placement is skewed");
+        }
+    }
+
+    @Test
+    public void unrelatedAnswersAreToppedUpEvenly() {
+        // No two answers share a trigram, so every wrong option comes from the top-up
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            text.append("Question ").append(i).append('\t').append(String.valueOf((char) ('a' + i)).repeat(4)).append('\n');
+        }
+        QuestionBank bank = QuestionBank.ofDeck(QuestionBankParser.parse(text));
+        int[] offered = new int[bank.getAnswerCount()];
+        for (int round = 0; round < 9000; round++) {
+            QuestionBank.QuizData card = bank.getQuestion(0);
+            checkCard(bank, 0, card);
+            for (int answerId : card.getAnswerIds()) {
+                offered[answerId]++;
+            }
+        }
+        assertEquals(9000, offered[bank.getAnswerId(0)]);
+        for (int a = 0; a < offered.length; a++) {
+            if (a != bank.getAnswerId(0)) {
+                // 3 of the 9 other answers per card, so 3000 expected each
+                assertTrue(offered[a] > 2700 && offered[a] < 3300, "answer " + a + " offered " + offered[a] + " times");
+            }
+        }
+    }
+
+    @Test
+    public void defaultOptionsAreNumberedFromOne() {
+        QuestionBank bank = deck(2, 2);
+        for (int round = 0; round < 100; round++) {
+            QuestionBank.QuizData card = bank.getQuestion(0);
+            for (int slot = 0; slot < 4; slot++) {
+                if (card.getAnswerIds()[slot] < 0) {
+                    assertEquals("Option " + (slot + 1), card.getAllAnswers().get(slot));
+                }
+            }
+            assertFalse(card.getAllAnswers().contains("Option 0"));
+        }
+    }
+
+    @Test
+    public void questionIdsAreSharedAndMapBothWays() {
+        QuestionIndex index = new QuestionIndex();
+        index.idOf("Question 3");
+        QuestionBank bank = deck(5, 5);
+        QuestionBank.QuestionIds ids = bank.getQuestionIds(index);
+        assertSame(ids, bank.getQuestionIds(index));
+        assertEquals(5, ids.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(index.find("Question " + i), ids.idAt(i));
+            assertEquals(i, ids.bankIndexOf(ids.idAt(i)));
+        }
+        assertEquals(-1, ids.bankIndexOf(index.idOf("Not in the deck")));
+        // Another server's index gets its own mapping
+        assertNotSame(ids, bank.getQuestionIds(new QuestionIndex()));
+    }
+}
@@ -0,0 +1,111 @@
+package bogget.studycraft;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QuizSessionsTest {
+    private static final UUID PLAYER = new UUID(0, 1);
+    private static final UUID OTHER_PLAYER = new UUID(0, 2);
+
+    private static final QuestionBank BANK = QuestionBank.ofDeck(QuestionBankParser.parse(
+        "Lithium\tCrimson flame\nSodium\tYellow flame\nPotassium\tLilac flame\n"));
+
+    private static QuizSessions.Session open(QuizSessions sessions, UUID playerId) {
+        return sessions.open(playerId, BANK, BANK.getQuestion(0), false);
+    }
+
+    private static void tick(QuizSessions sessions, int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            sessions.tick();
+        }
+    }
+
+    @Test
+    public void answeredSessionsCloseOnce() {
+        QuizSessions sessions = new QuizSessions();
+        QuizSessions.Session session = open(sessions, PLAYER);
+        assertNull(sessions.close(OTHER_PLAYER, session.getId()));
+        assertSame(session, sessions.close(PLAYER, session.getId()));
+        assertNull(sessions.close(PLAYER, session.getId()));
+    }
+
+    @Test
+    public void unansweredSessionsExpireAfterTheirTimeToLive() {
+        QuizSessions sessions = new QuizSessions();
+        QuizSessions.Session first = open(sessions, PLAYER);
+        // Opened part way through a wheel slot, so it runs out at that slot's end
+        // and may be cut short by up to a second
+        tick(sessions, QuizSessions.SESSION_TTL_TICKS / 2 + 7);
+        QuizSessions.Session second = open(sessions, PLAYER);
+
+        tick(sessions, QuizSessions.SESSION_TTL_TICKS / 2 - 7 - 20);
+        assertSame(first, sessions.close(PLAYER, first.getId()));
+        first = open(sessions, PLAYER);
+
+        tick(sessions, QuizSessions.SESSION_TTL_TICKS / 2 + 40);
+        assertNull(sessions.close(PLAYER, second.getId()));
+        assertSame(first, sessions.close(PLAYER, first.getId()));
+    }
+
+    @Test
+    public void expiryOnlyTouchesItsOwnSessions() {
+        QuizSessions sessions = new QuizSessions();
+        QuizSessions.Session early = open(sessions, PLAYER);
+        tick(sessions, QuizSessions.SESSION_TTL_TICKS - 100);
+        QuizSessions.Session late = open(sessions, OTHER_PLAYER);
+        tick(sessions, 140);
+        assertNull(sessions.close(PLAYER, early.getId()));
+        assertSame(late, sessions.close(OTHER_PLAYER, late.getId()));
+    }
+
+    @Test
+    public void openingTooManyDropsTheOldest() {
+        QuizSessions sessions = new QuizSessions();
+        List<QuizSessions.Session> opened = new ArrayList<>();
+        for (int i = 0; i < QuizSessions.MAX_OPEN_PER_PLAYER + 2; i++) {
+            opened.add(open(sessions, PLAYER));
+        }
+        // Another player's cards do not count against this one's
+        QuizSessions.Session other = open(sessions, OTHER_PLAYER);
+
+        assertNull(sessions.close(PLAYER, opened.get(0).getId()));
+        assertNull(sessions.close(PLAYER, opened.get(1).getId()));
+        for (int i = 2; i < opened.size(); i++) {
+            assertSame(opened.get(i), sessions.close(PLAYER, opened.get(i).getId()));
+        }
+        assertSame(other, sessions.close(OTHER_PLAYER, other.getId()));
+    }
+
+    @Test
+    public void removedPlayersHaveNoSessions() {
+        QuizSessions sessions = new QuizSessions();
+        QuizSessions.Session session = open(sessions, PLAYER);
+        sessions.remove(PLAYER);
+        assertNull(sessions.close(PLAYER, session.getId()));
+        // The wheel still drops the closed session when its slot comes round
+        tick(sessions, QuizSessions.SESSION_TTL_TICKS + 40);
+        assertNotNull(open(sessions, PLAYER));
+    }
+
+    @Test
+    public void reportedLatencyIsBoundedByTheSessionAge() throws InterruptedException {
+        QuizSessions sessions = new QuizSessions();
+        QuizSessions.Session session = open(sessions, PLAYER);
+        Thread.sleep(20);
+        int age = session.getAgeMs();
+        assertTrue(age >= 20);
+        assertEquals(0, session.clampLatencyMs(-5));
+        assertEquals(10, session.clampLatencyMs(10));
+        int clamped = session.clampLatencyMs(Integer.MAX_VALUE);
+        assertTrue(clamped >= age && clamped <= session.getAgeMs(), "clamped to " + clamped);
+    }
+}
@@ -0,0 +1,59 @@
+package bogget.studycraft;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ReviewSchedulerTest {
+    private static final long NOW = 1_700_000_000L;
+
+    private static QuestionBank deck(int questions) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < questions; i++) {
+            text.append("Question ").append(i).append('\t').append("Answer ").append(i).append('\n');
+        }
+        return QuestionBank.ofDeck(QuestionBankParser.parse(text));
+    }
+
+    @Test
+    public void overdueCardsComeFirstThenNewOnesThenTheSoonestDue() {
+        QuestionIndex index = new QuestionIndex();
+        QuestionBank bank = deck(4);
+        QuestionBank.QuestionIds ids = bank.getQuestionIds(index);
+        ReviewScheduler schedule = new ReviewScheduler();
+
+        // Nothing reviewed yet: cards are introduced in bank order
+        assertEquals(0, schedule.next(bank, index, NOW));
+
+        schedule.set(ids.idAt(0), ReviewScheduler.packCard(2500, 1, 86400), NOW + 100);
+        schedule.set(ids.idAt(2), ReviewScheduler.packCard(2500, 1, 86400), NOW - 50);
+        schedule.set(ids.idAt(3), ReviewScheduler.packCard(2500, 1, 86400), NOW - 10);
+        assertEquals(2, schedule.next(bank, index, NOW));
+
+        // Answering the overdue cards moves them out; the rest are scheduled in the future
+        schedule.review(ids.idAt(2), true, 1000, NOW);
+        assertEquals(3, schedule.next(bank, index, NOW));
+        schedule.review(ids.idAt(3), true, 1000, NOW);
+        assertEquals(1, schedule.next(bank, index, NOW));
+
+        // Once every card has been seen, the one due soonest
+        schedule.review(ids.idAt(1), true, 1000, NOW);
+        assertEquals(0, schedule.next(bank, index, NOW));
+    }
+
+    @Test
+    public void aNewBankRebuildsTheQueue() {
+        QuestionIndex index = new QuestionIndex();
+        QuestionBank first = deck(3);
+        ReviewScheduler schedule = new ReviewScheduler();
+        schedule.set(first.getQuestionIds(index).idAt(1), ReviewScheduler.packCard(2500, 1, 60), NOW - 1);
+        assertEquals(1, schedule.next(first, index, NOW));
+
+        // The same questions in another order, as after a deck reload
+        QuestionBank reordered = QuestionBank.ofDeck(QuestionBankParser.parse(
+            "Question 2\tAnswer 2\nQuestion 1\tAnswer 1\nQuestion 0\tAnswer 0\n"));
+        assertEquals(1, schedule.next(reordered, index, NOW));
+        schedule.review(index.find("Question 1"), true, 1000, NOW);
+        assertEquals(0, schedule.next(reordered, index, NOW));
+    }
+}
@@ -0,0 +1,203 @@
+package bogget.studycraft;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StatsCodecTest {
+    private static final long ATTEMPT_1 = AnswerHistory.pack(1_700_000_000_000L, 1200, true);
+    private static final long ATTEMPT_2 = AnswerHistory.pack(1_700_000_060_000L, 800, false);
+    private static final long ATTEMPT_3 = AnswerHistory.pack(1_700_000_120_000L, 4000, false);
+    private static final long CARD = ReviewScheduler.packCard(2500, 1, 86400);
+    private static final long DUE = 1_700_086_400L;
+
+    private static StatsDelta delta(int entries, boolean full) {
+        int[] questionIds = new int[entries];
+        String[] texts = new String[entries];
+        long[] counts = new long[entries];
+        long[][] attempts = new long[entries][];
+        for (int i = 0; i < entries; i++) {
+            questionIds[i] = i * 37;
+            // Every other entry leaves its text out, as for questions the client already knows
+            texts[i] = i % 2 == 0 ? "Question é " + i : null;
+            // 100k answers per entry
+            counts[i] = PlayerStatsShard.pack(60_000 + i, 40_000 - i);
+            attempts[i] = new long[i % AnswerHistory.SLOTS];
+            Arrays.fill(attempts[i], ATTEMPT_1 + i);
+        }
+        return new StatsDelta(-42L, 1L << 40, full, questionIds, texts, counts, attempts);
+    }
+
+    @Test
+    public void deltaRoundTrips() throws IOException {
+        StatsDelta sent = delta(200, true);
+        StatsDelta received = StatsCodec.decodeDelta(StatsCodec.encodeDelta(sent));
+
+        assertEquals(sent.getEpoch(), received.getEpoch());
+        assertEquals(sent.getVersion(), received.getVersion());
+        assertTrue(received.isFull());
+        assertEquals(sent.size(), received.size());
+        for (int i = 0; i < sent.size(); i++) {
+            assertEquals(sent.getQuestionId(i), received.getQuestionId(i));
+            assertEquals(sent.getText(i), received.getText(i));
+            assertEquals(sent.getCounts(i), received.getCounts(i));
+            assertArrayEquals(sent.getAttempts(i), received.getAttempts(i));
+
+            QuizStatistics.StatsEntry entry = received.getEntry(i);
+            assertEquals(60_000 + i, entry.getTimesCorrect());
+            assertEquals(40_000 - i, entry.getTimesWrong());
+        }
+    }
+
+    @Test
+    public void emptyDeltaRoundTrips() throws IOException {
+        StatsDelta received = StatsCodec.decodeDelta(StatsCodec.encodeDelta(delta(0, false)));
+        assertFalse(received.isFull());
+        assertEquals(0, received.size());
+    }
+
+    @Test
+    public void truncatedDeltaIsRejected() {
+        byte[] data = StatsCodec.encodeDelta(delta(5, true));
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThrows(IOException.class, () -> StatsCodec.decodeDelta(truncated));
+        }
+    }
+
+    @Test
+    public void deltaWithImpossibleCountIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(1);
+        StatsCodec.writeVarLong(out, 1);
+        out.writeBoolean(true);
+        StatsCodec.writeVarInt(out, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> StatsCodec.decodeDelta(bytes.toByteArray()));
+    }
+
+    // A stats file as earlier builds wrote it: "Lithium" answered 3/1 and reviewed,
+    // "Sodium" answered 0/2. Each section's count is passed in so it can be corrupted.
+    private static byte[] legacyFile(int version, int stringCount, int recordCount, int historyCount, int scheduledCount) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x53435354);
+        StatsCodec.writeVarInt(out, version);
+
+        StatsCodec.writeVarInt(out, stringCount);
+        for (String text : new String[]{"Lithium", "Sodium"}) {
+            byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+            StatsCodec.writeVarInt(out, utf8.length);
+            out.write(utf8);
+        }
+
+        StatsCodec.writeVarInt(out, recordCount);
+        int[][] records = {{0, 3, 1}, {1, 0, 2}};
+        for (int[] record : records) {
+            for (int value : record) {
+                StatsCodec.writeVarInt(out, value);
+            }
+        }
+
+        if (version >= 2) {
+            StatsCodec.writeVarInt(out, historyCount);
+            long[][] histories = {{ATTEMPT_1, ATTEMPT_2}, {ATTEMPT_3}};
+            for (int localId = 0; localId < histories.length; localId++) {
+                StatsCodec.writeVarInt(out, localId);
+                StatsCodec.writeVarInt(out, histories[localId].length);
+                for (long attempt : histories[localId]) {
+                    out.writeLong(attempt);
+                }
+            }
+        }
+
+        if (version >= 3) {
+            StatsCodec.writeVarInt(out, scheduledCount);
+            StatsCodec.writeVarInt(out, 0);
+            out.writeLong(CARD);
+            out.writeLong(DUE);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void legacyFileDecodes() throws IOException {
+        QuestionIndex index = new QuestionIndex();
+        // Ids in the file are local; the server may already know other questions
+        index.idOf("Potassium");
+        AnswerHistory history = new AnswerHistory();
+        ReviewScheduler schedule = new ReviewScheduler();
+        long[] counts = StatsCodec.decode(legacyFile(3, 2, 2, 2, 1), index, history, schedule);
+
+        int lithium = index.find("Lithium");
+        int sodium = index.find("Sodium");
+        assertEquals(PlayerStatsShard.pack(3, 1), counts[lithium]);
+        assertEquals(PlayerStatsShard.pack(0, 2), counts[sodium]);
+        assertArrayEquals(new long[]{ATTEMPT_1, ATTEMPT_2}, history.getAttempts(lithium));
+        assertArrayEquals(new long[]{ATTEMPT_3}, history.getAttempts(sodium));
+        assertEquals(CARD, schedule.getCard(lithium));
+        assertEquals(DUE, schedule.getDueSeconds(lithium));
+        assertFalse(schedule.isReviewed(sodium));
+    }
+
+    @Test
+    public void versionOneFileHasNoHistory() throws IOException {
+        QuestionIndex index = new QuestionIndex();
+        AnswerHistory history = new AnswerHistory();
+        long[] counts = StatsCodec.decode(legacyFile(1, 2, 2, 0, 0), index, history, new ReviewScheduler());
+        assertEquals(PlayerStatsShard.pack(3, 1), counts[index.find("Lithium")]);
+        assertEquals(0, history.getAttempts(index.find("Lithium")).length);
+    }
+
+    @Test
+    public void unsupportedVersionIsRejected() throws IOException {
+        byte[] data = legacyFile(9, 2, 2, 2, 1);
+        assertThrows(IOException.class, () -> StatsCodec.decode(data, new QuestionIndex(), new AnswerHistory(), new ReviewScheduler()));
+    }
+
+    @Test
+    public void impossibleSectionCountsAreRejected() throws IOException {
+        // Too large, or negative once read back: either must be an IOException, not an
+        // OutOfMemoryError or NegativeArraySizeException the loader cannot handle
+        for (int bad : new int[]{Integer.MAX_VALUE, 1 << 20, -1}) {
+            byte[][] files = {
+                legacyFile(3, bad, 2, 2, 1),
+                legacyFile(3, 2, bad, 2, 1),
+                legacyFile(3, 2, 2, bad, 1),
+                legacyFile(3, 2, 2, 2, bad),
+            };
+            for (byte[] data : files) {
+                assertThrows(IOException.class, () -> StatsCodec.decode(data, new QuestionIndex(), new AnswerHistory(), new ReviewScheduler()));
+            }
+        }
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        byte[] data = legacyFile(3, 2, 2, 2, 1);
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThrows(IOException.class, () -> StatsCodec.decode(truncated, new QuestionIndex(), new AnswerHistory(), new ReviewScheduler()));
+        }
+    }
+
+    @Test
+    public void entryOfUnpacksCounts() {
+        long[] attempts = {ATTEMPT_1};
+        QuizStatistics.StatsEntry entry = QuizStatistics.StatsEntry.of(PlayerStatsShard.pack(100_000, 7), attempts);
+        assertEquals(100_000, entry.getTimesCorrect());
+        assertEquals(7, entry.getTimesWrong());
+        assertEquals(100_007, entry.getTotal());
+        assertArrayEquals(attempts, entry.getRecentAttempts());
+    }
+}
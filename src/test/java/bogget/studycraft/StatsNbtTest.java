@@ -0,0 +1,60 @@
+package bogget.studycraft;
+
+import net.minecraft.nbt.NbtCompound;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StatsNbtTest {
+    @Test
+    public void statsRoundTrip() throws IOException {
+        QuestionIndex index = new QuestionIndex();
+        int lithium = index.idOf("Lithium");
+        int sodium = index.idOf("Sodium");
+        // Known to the server but never answered
+        index.idOf("Potassium");
+        long[] counts = new long[3];
+        counts[lithium] = PlayerStatsShard.pack(100_000, 3);
+        counts[sodium] = PlayerStatsShard.pack(0, 2);
+        AnswerHistory history = new AnswerHistory();
+        history.record(lithium, AnswerHistory.pack(1_700_000_000_000L, 900, true));
+        history.record(sodium, AnswerHistory.pack(1_700_000_010_000L, 2500, false));
+        history.record(sodium, AnswerHistory.pack(1_700_000_020_000L, 1800, false));
+        ReviewScheduler schedule = new ReviewScheduler();
+        schedule.review(lithium, true, 900, 1_700_000_000L);
+
+        NbtCompound nbt = StatsNbt.write(counts, history, schedule, index);
+
+        // Read into a server that numbers the questions differently
+        QuestionIndex otherIndex = new QuestionIndex();
+        otherIndex.idOf("Calcium");
+        AnswerHistory readHistory = new AnswerHistory();
+        ReviewScheduler readSchedule = new ReviewScheduler();
+        long[] readCounts = StatsNbt.read(nbt, otherIndex, readHistory, readSchedule);
+
+        int readLithium = otherIndex.find("Lithium");
+        int readSodium = otherIndex.find("Sodium");
+        assertEquals(counts[lithium], readCounts[readLithium]);
+        assertEquals(counts[sodium], readCounts[readSodium]);
+        assertArrayEquals(history.getAttempts(lithium), readHistory.getAttempts(readLithium));
+        assertArrayEquals(history.getAttempts(sodium), readHistory.getAttempts(readSodium));
+        assertEquals(schedule.getCard(lithium), readSchedule.getCard(readLithium));
+        assertEquals(schedule.getDueSeconds(lithium), readSchedule.getDueSeconds(readLithium));
+        assertFalse(readSchedule.isReviewed(readSodium));
+        // Unanswered questions are not saved at all
+        assertTrue(otherIndex.find("Potassium") < 0);
+    }
+
+    @Test
+    public void unsupportedFormatIsRejected() {
+        NbtCompound nbt = new NbtCompound();
+        nbt.putInt("Format", StatsNbt.FORMAT + 1);
+        assertThrows(IOException.class, () -> StatsNbt.read(nbt, new QuestionIndex(), new AnswerHistory(), new ReviewScheduler()));
+    }
+}